@@ -0,0 +1,174 @@
+package org.api.archis;
+
+import java.util.*;
+import java.io.*;
+
+import org.api.archis.universe.*;
+
+/**
+ * <p>Headless command-line runner for batch simulations</p>
+ *
+ * <p>This builds a simulation from a SimulationConfiguration properties
+ * file, runs it until its stop point, and periodically writes statistics.
+ * It never touches the GUI, so it can be run on machines without a
+ * display:</p>
+ *
+ * <pre>
+ * java -cp archis.jar org.api.archis.BatchRunner simulation.properties
+ * </pre>
+ *
+ * <p>In addition to the keys understood by SimulationConfiguration, the
+ * following keys are recognized:</p>
+ *
+ * <ul>
+ * <li><b>statisticsInterval</b> - Ticks between statistics reports (default: 100)</li>
+ * <li><b>statisticsFile</b> - File to write statistics to (default: standard output)</li>
+ * </ul>
+ *
+ * <p>Statistics are written as tab-separated lines of tick, statistic name,
+ * and value.  Each report also includes the pseudo-statistic "ticks/sec"
+ * giving the tick rate since the previous report.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class BatchRunner implements SimulationObserver
+{
+  private Simulation simulation;
+  private PrintWriter out;
+  private long interval;
+  private long lastReportTime,lastReportClock;
+  private volatile String haltReason;
+
+  /**
+   * Constructs a new batch runner
+   *
+   * @param simulation Simulation to run
+   * @param out Writer to write statistics to
+   * @param interval Ticks between statistics reports
+   */
+  public BatchRunner(Simulation simulation,PrintWriter out,long interval)
+  {
+    this.simulation = simulation;
+    this.out = out;
+    this.interval = ((interval > 0L) ? interval : 1L);
+    haltReason = null;
+  }
+
+  /**
+   * <p>Runs the simulation until it halts</p>
+   *
+   * <p>The universe should have a stop point or this will run forever.</p>
+   *
+   * @return Halt reason
+   */
+  public String run()
+  {
+    lastReportTime = System.currentTimeMillis();
+    lastReportClock = simulation.universe().clock();
+    simulation.addObserver(this);
+    simulation.start();
+    synchronized(this) {
+      while (haltReason == null) {
+        try {
+          wait();
+        } catch (InterruptedException e) {}
+      }
+    }
+    simulation.removeObserver(this);
+    report();
+    out.flush();
+    return haltReason;
+  }
+
+  /**
+   * Writes a statistics report for the current tick
+   */
+  public void report()
+  {
+    long clock = simulation.universe().clock();
+    long now = System.currentTimeMillis();
+    if (clock == lastReportClock)
+      return;
+    double tps = ((now > lastReportTime) ? (((double)(clock - lastReportClock) * 1000.0) / (double)(now - lastReportTime)) : 0.0);
+    lastReportTime = now;
+    lastReportClock = clock;
+
+    out.println(clock+"\tticks/sec\t"+tps);
+    writeStatistics(out,"",clock,simulation.getStatistics());
+    out.flush();
+  }
+
+  /**
+   * Writes statistics as tab-separated lines of tick, name, and value
+   *
+   * @param out Writer to write to
+   * @param prefix Prefix for each line (e.g. a run number and tab) or empty string
+   * @param clock Simulation clock
+   * @param stats Statistics (typically from Simulation.getStatistics())
+   */
+  public static void writeStatistics(PrintWriter out,String prefix,long clock,SortedMap stats)
+  {
+    for(Iterator i=stats.entrySet().iterator();i.hasNext();) {
+      Map.Entry e = (Map.Entry)i.next();
+      out.println(prefix+clock+"\t"+e.getKey()+"\t"+e.getValue());
+    }
+  }
+
+  public void tick()
+  {
+    if ((simulation.universe().clock() % interval) == 0L)
+      report();
+  }
+
+  public void halted(String haltReason)
+  {
+    synchronized(this) {
+      this.haltReason = ((haltReason == null) ? "" : haltReason);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Main method
+   *
+   * @param argv Command line arguments (configuration file)
+   */
+  public static void main(String[] argv)
+  {
+    // Make sure nothing tries to open a display
+    System.setProperty("java.awt.headless","true");
+
+    if (argv.length != 1) {
+      System.err.println("Usage: BatchRunner <configuration file>");
+      System.exit(1);
+    }
+
+    Simulation simulation = null;
+    PrintWriter out = null;
+    try {
+      SimulationConfiguration config = new SimulationConfiguration(new File(argv[0]));
+      String statisticsFile = config.get("statisticsFile",null);
+      if (statisticsFile == null)
+        out = new PrintWriter(new OutputStreamWriter(System.out));
+      else out = new PrintWriter(new BufferedWriter(new FileWriter(statisticsFile)));
+
+      simulation = config.createSimulation();
+      if (simulation.universe().getStopPoint() <= 0L)
+        System.err.println("Warning: no stopPoint set, running forever");
+
+      String reason = new BatchRunner(simulation,out,config.getLong("statisticsInterval",100L)).run();
+      System.err.println("Halted at tick "+simulation.universe().clock()+": "+reason);
+    } catch (Throwable t) {
+      t.printStackTrace();
+      System.exit(1);
+    } finally {
+      if (simulation != null)
+        simulation.kill();
+      if (out != null)
+        out.close();
+    }
+    System.exit(0);
+  }
+}
@@ -2,11 +2,13 @@ package org.api.archis;
 
 import java.util.*;
 import java.lang.ref.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 
 import org.api.archis.universe.*;
 import org.api.archis.utils.RandomSource;
+import org.api.archis.utils.ThreadLocalRandomSource;
 
 /**
  * <p>Main class for a running simulation</p>
@@ -16,6 +18,10 @@ import org.api.archis.utils.RandomSource;
  * The thread created by this class can be destroyed by destroy() or will be
  * stopped if this class is garbage collected.</p>
  *
+ * <p>The simulation thread is not created until start() or step() is first
+ * called.  Code that schedules simulations itself (e.g. SweepRunner) can
+ * instead call tick() from its own threads.</p>
+ *
  * <p>This is really just a wrapper; most of the guts are in Universe.java.</p>
  *
  * @author Adam Ierymenko
@@ -33,12 +39,24 @@ public class Simulation
   // LinkedList of WeakReference references to SimulationObserver objects
   private LinkedList observers;
 
-  // Simulation run thread
+  // Simulation run thread (created on first start() or step())
   private SimulationRunnerThread srthread;
 
+  // Has this simulation been killed?
+  private volatile boolean killed;
+
+  // Start and stop times of the last tick
+  private volatile long tickStartTime,tickStopTime;
+
   // Statistics
   private HashMap statistics;
 
+  // Counter for assigning cell ids
+  private AtomicLong cellIdCounter;
+
+  // Is this simulation deterministic?
+  private boolean deterministic;
+
   // Name of simulation
   private String name;
 
@@ -60,7 +78,6 @@ public class Simulation
     public volatile boolean running;
     public volatile boolean step;
     public volatile boolean die;
-    public long startTime,stopTime;
 
     public SimulationRunnerThread()
     {
@@ -71,7 +88,6 @@ public class Simulation
       running = false;
       die = false;
       step = false;
-      startTime = stopTime = 0L;
     }
 
     public void run()
@@ -82,39 +98,9 @@ public class Simulation
 
         if (run||step) {
           running = true;
-          startTime = System.currentTimeMillis();
-          universe.tick();
-          stopTime = System.currentTimeMillis();
-          synchronized(observers) {
-            for(Iterator i=observers.iterator();i.hasNext();) {
-              WeakReference ref = (WeakReference)i.next();
-              SimulationObserver obs = (SimulationObserver)ref.get();
-              if (obs == null)
-                i.remove();
-              else {
-                try {
-                  obs.tick();
-                } catch (Throwable t) {}
-              }
-            }
-          }
           step = false;
-          if (haltReason != null) {
+          if (runTick() != null)
             run = false;
-            synchronized(observers) {
-              for(Iterator i=observers.iterator();i.hasNext();) {
-                WeakReference ref = (WeakReference)i.next();
-                SimulationObserver obs = (SimulationObserver)ref.get();
-                if (obs == null)
-                  i.remove();
-                else {
-                  try {
-                    obs.halted(haltReason);
-                  } catch (Throwable t) {}
-                }
-              }
-            }
-          }
         } else {
           running = false;
           step = false;
@@ -138,15 +124,138 @@ public class Simulation
    * @param randomSource PRNG for this simulation
    */
   public Simulation(int nthreads,String name,RandomSource randomSource)
+  {
+    this(nthreads,name,randomSource,Universe.EXECUTION_MODE_BATCHED);
+  }
+
+  /**
+   * <p>Constructs a new simulation with a given cell execution mode</p>
+   *
+   * <p>Work-stealing execution splits the population into small chunks
+   * that idle threads can take over, which keeps all processors busy when
+   * a few cells take much longer to execute than the rest.</p>
+   *
+   * @param nthreads Number of concurrent threads
+   * @param name Name of this simulation
+   * @param randomSource PRNG for this simulation
+   * @param executionMode Universe execution mode (EXECUTION_MODE constant in Universe)
+   */
+  public Simulation(int nthreads,String name,RandomSource randomSource,int executionMode)
+  {
+    this(nthreads,name,randomSource,executionMode,false);
+  }
+
+  /**
+   * <p>Constructs a new simulation, optionally in deterministic mode</p>
+   *
+   * <p>In deterministic mode, the given random source is only used to
+   * pick a seed.  Every cell then draws random numbers from its own stream
+   * derived from that seed, its id, and the clock, and births are added in
+   * a fixed order.  Results are then the same for any number of threads
+   * and either execution mode.  Conditions that let cells interact with
+   * each other while they execute (e.g. Landscape2D) still depend on the
+   * order in which cells run, and so are only repeatable single-threaded.</p>
+   *
+   * @param nthreads Number of concurrent threads
+   * @param name Name of this simulation
+   * @param randomSource PRNG for this simulation
+   * @param executionMode Universe execution mode (EXECUTION_MODE constant in Universe)
+   * @param deterministic Run in deterministic mode?
+   */
+  public Simulation(int nthreads,String name,RandomSource randomSource,int executionMode,boolean deterministic)
   {
     this.name = name;
     this.nthreads = nthreads;
-    this.randomSource = randomSource;
+    this.deterministic = deterministic;
+    this.randomSource = (deterministic ? new ThreadLocalRandomSource(randomSource.randomLong()) : randomSource);
+    cellIdCounter = new AtomicLong(0L);
     observers = new LinkedList();
-    srthread = new SimulationRunnerThread();
+    srthread = null;
+    killed = false;
     statistics = new HashMap(128,0.75F);
     openFrames = new LinkedList();
-    universe = new Universe(nthreads,this);
+    universe = new Universe(nthreads,executionMode,this);
+  }
+
+  /**
+   * Internal method to run one tick and notify observers
+   *
+   * @return Halt reason if the simulation halted at the end of this tick, otherwise null
+   */
+  private String runTick()
+  {
+    tickStartTime = System.currentTimeMillis();
+    universe.tick();
+    tickStopTime = System.currentTimeMillis();
+    synchronized(observers) {
+      for(Iterator i=observers.iterator();i.hasNext();) {
+        WeakReference ref = (WeakReference)i.next();
+        SimulationObserver obs = (SimulationObserver)ref.get();
+        if (obs == null)
+          i.remove();
+        else {
+          try {
+            obs.tick();
+          } catch (Throwable t) {}
+        }
+      }
+    }
+    String hr = haltReason;
+    if (hr != null) {
+      synchronized(observers) {
+        for(Iterator i=observers.iterator();i.hasNext();) {
+          WeakReference ref = (WeakReference)i.next();
+          SimulationObserver obs = (SimulationObserver)ref.get();
+          if (obs == null)
+            i.remove();
+          else {
+            try {
+              obs.halted(hr);
+            } catch (Throwable t) {}
+          }
+        }
+      }
+    }
+    return hr;
+  }
+
+  /**
+   * Internal method to get the simulation thread, creating it if needed
+   *
+   * @return Simulation runner thread
+   * @throws IllegalStateException Simulation has been killed
+   */
+  private synchronized SimulationRunnerThread runnerThread()
+    throws IllegalStateException
+  {
+    if (killed)
+      throw new IllegalStateException("Simulation has been killed");
+    if (srthread == null)
+      srthread = new SimulationRunnerThread();
+    return srthread;
+  }
+
+  /**
+   * <p>Runs a single tick in the calling thread</p>
+   *
+   * <p>This is for code that schedules simulations on its own threads
+   * instead of using start() and stop().  Observers are notified as they
+   * would be by the simulation thread.  Any halt reason is cleared before
+   * the tick.</p>
+   *
+   * @return Halt reason if the simulation halted at the end of this tick, otherwise null
+   * @throws IllegalStateException Simulation is running in its own thread or has been killed
+   */
+  public String tick()
+    throws IllegalStateException
+  {
+    if (killed)
+      throw new IllegalStateException("Simulation has been killed");
+    SimulationRunnerThread t = srthread;
+    if ((t != null)&&(t.running||t.run||t.step))
+      throw new IllegalStateException("Simulation is already running");
+    haltReason = null;
+    return runTick();
   }
 
   /**
@@ -190,6 +299,26 @@ public class Simulation
     return nthreads;
   }
 
+  /**
+   * Returns whether this simulation is running in deterministic mode
+   *
+   * @return True if deterministic
+   */
+  public boolean isDeterministic()
+  {
+    return deterministic;
+  }
+
+  /**
+   * Returns a new unique cell id (used by Cell)
+   *
+   * @return New cell id (ids start at 1)
+   */
+  public long newCellId()
+  {
+    return cellIdCounter.incrementAndGet();
+  }
+
   /**
    * Gets the name of this simulation
    *
@@ -238,9 +367,10 @@ public class Simulation
    */
   public void start()
   {
+    SimulationRunnerThread t = runnerThread();
     haltReason = null;
-    srthread.run = true;
-    srthread.interrupt();
+    t.run = true;
+    t.interrupt();
   }
 
   /**
@@ -250,9 +380,12 @@ public class Simulation
    */
   public void stop(boolean wait)
   {
-    srthread.run = false;
+    SimulationRunnerThread t = srthread;
+    if (t == null)
+      return;
+    t.run = false;
     if (wait) {
-      while (srthread.running) {
+      while (t.running) {
         try {
           Thread.sleep(500L);
         } catch (InterruptedException e) {}
@@ -268,11 +401,12 @@ public class Simulation
   public void step()
     throws IllegalStateException
   {
-    if (srthread.running||srthread.run)
+    SimulationRunnerThread t = runnerThread();
+    if (t.running||t.run)
       throw new IllegalStateException("Simulation is already running");
     haltReason = null;
-    srthread.step = true;
-    srthread.interrupt();
+    t.step = true;
+    t.interrupt();
   }
 
   /**
@@ -280,9 +414,14 @@ public class Simulation
    */
   public void kill()
   {
-    srthread.die = true;
-    srthread.interrupt();
-    srthread = null;
+    synchronized(this) {
+      killed = true;
+      if (srthread != null) {
+        srthread.die = true;
+        srthread.interrupt();
+        srthread = null;
+      }
+    }
     universe.destroy();
     synchronized(openFrames) {
       for(Iterator i=openFrames.iterator();i.hasNext();) {
@@ -306,7 +445,7 @@ public class Simulation
    */
   public boolean isKilled()
   {
-    return (srthread == null);
+    return killed;
   }
 
   /**
@@ -316,7 +455,8 @@ public class Simulation
    */
   public boolean isRunning()
   {
-    return srthread.running;
+    SimulationRunnerThread t = srthread;
+    return ((t != null)&&t.running);
   }
 
   /**
@@ -453,7 +593,7 @@ public class Simulation
    */
   public long getLastTickTime()
   {
-    return srthread.stopTime - srthread.startTime;
+    return tickStopTime - tickStartTime;
   }
 
   /**
@@ -0,0 +1,331 @@
+package org.api.archis;
+
+import java.util.*;
+import java.io.*;
+import java.lang.reflect.*;
+
+import org.api.archis.life.vms.RegisterMachineGenome;
+import org.api.archis.universe.*;
+import org.api.archis.universe.environmentalconditions.*;
+import org.api.archis.utils.*;
+
+/**
+ * <p>A simulation configuration read from a properties file</p>
+ *
+ * <p>This describes everything needed to build a simulation without the
+ * GUI.  Recognized keys are:</p>
+ *
+ * <ul>
+ * <li><b>name</b> - Simulation name (default: Batch)</li>
+ * <li><b>threads</b> - Number of concurrent threads (default: 1)</li>
+ * <li><b>scheduler</b> - batched or work-stealing (default: batched)</li>
+ * <li><b>prng</b> - mersenne-twister, thread-local, java, or nonrandom (default: mersenne-twister)</li>
+ * <li><b>seed</b> - PRNG seed (default: current time)</li>
+ * <li><b>deterministic</b> - If true, run in deterministic mode so that
+ *     results do not depend on the number of threads (default: false)</li>
+ * <li><b>stopPoint</b> - Tick at which to stop (default: 0, run forever)</li>
+ * <li><b>staticProbability</b> - Probability of static in cell I/O</li>
+ * <li><b>decodeThreshold</b> and <b>compileThreshold</b> - Executions
+ *     before a register machine genome is decoded or compiled; 0 means
+ *     immediately and a negative value disables that tier.  These apply
+ *     only to this simulation (default: 4 and 1000)</li>
+ * <li><b>cycleDetection</b> - If true, register machine genomes caught in
+ *     an endless loop are stopped as soon as the loop is detected instead
+ *     of running until they starve.  This applies only to this simulation
+ *     (default: true)</li>
+ * <li><b>lockstepExecution</b> - If true, cells that share a genome that
+ *     neither reads nor writes are executed together in lockstep
+ *     (default: false)</li>
+ * <li><b>defaultConditions</b> - If true (the default), add the same
+ *     ReproductionCondition, RandomSourceCondition, and
+ *     EnvironmentalMutationCondition that the GUI adds to new simulations</li>
+ * <li><b>condition.<i>n</i></b> - Class name of a condition to add</li>
+ * <li><b>probe.<i>n</i></b> - Class name of a probe to add</li>
+ * <li><b>condition.<i>n</i>.<i>method</i></b> or
+ *     <b>probe.<i>n</i>.<i>method</i></b> - Calls a public one-argument
+ *     method (e.g. setCreateCellsPerTick) on that condition or probe with
+ *     the given value after it has been added to the universe</li>
+ * </ul>
+ *
+ * <p>Conditions and probes are added in order of <i>n</i>, which need not
+ * be contiguous.  Method arguments may be int, long, float, double,
+ * boolean, or String.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class SimulationConfiguration
+{
+  private Properties properties;
+
+  /**
+   * Constructs a configuration from a set of properties
+   *
+   * @param properties Configuration properties
+   */
+  public SimulationConfiguration(Properties properties)
+  {
+    this.properties = properties;
+  }
+
+  /**
+   * Constructs a configuration by reading a properties file
+   *
+   * @param file File to read
+   * @throws IOException Error reading file
+   */
+  public SimulationConfiguration(File file)
+    throws IOException
+  {
+    properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Gets a copy of the properties in this configuration
+   *
+   * @return New Properties object
+   */
+  public Properties getProperties()
+  {
+    Properties r = new Properties();
+    r.putAll(properties);
+    return r;
+  }
+
+  /**
+   * Gets a configuration value
+   *
+   * @param key Key
+   * @param defaultValue Value to return if key is not set
+   * @return Value (trimmed) or default
+   */
+  public String get(String key,String defaultValue)
+  {
+    String v = properties.getProperty(key);
+    return ((v == null) ? defaultValue : v.trim());
+  }
+
+  /**
+   * Gets an integer configuration value
+   *
+   * @param key Key
+   * @param defaultValue Value to return if key is not set
+   * @return Value or default
+   * @throws IllegalArgumentException Value is not an integer
+   */
+  public long getLong(String key,long defaultValue)
+    throws IllegalArgumentException
+  {
+    String v = get(key,null);
+    if (v == null)
+      return defaultValue;
+    try {
+      return Long.parseLong(v);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key+" must be an integer value");
+    }
+  }
+
+  /**
+   * Creates a new random source as configured
+   *
+   * @return New random source
+   * @throws IllegalArgumentException Unrecognized PRNG
+   */
+  public RandomSource createRandomSource()
+    throws IllegalArgumentException
+  {
+    long seed = getLong("seed",System.currentTimeMillis());
+    String prng = get("prng","mersenne-twister");
+    if ("mersenne-twister".equalsIgnoreCase(prng))
+      return new MersenneTwisterRandomSource(seed);
+    else if ("thread-local".equalsIgnoreCase(prng))
+      return new ThreadLocalRandomSource(seed);
+    else if ("java".equalsIgnoreCase(prng))
+      return new JavaBuiltinRandomSource(seed);
+    else if ("nonrandom".equalsIgnoreCase(prng))
+      return new NonRandomRandomSource(seed);
+    throw new IllegalArgumentException("Unrecognized PRNG: "+prng);
+  }
+
+  /**
+   * <p>Creates a new simulation as configured</p>
+   *
+   * <p>The simulation is not started.</p>
+   *
+   * @return New simulation
+   * @throws IllegalArgumentException Invalid configuration value
+   * @throws ReflectiveOperationException Unable to create a condition or probe or call a method on it
+   */
+  public Simulation createSimulation()
+    throws IllegalArgumentException,ReflectiveOperationException
+  {
+    int threads = (int)getLong("threads",1L);
+    if (threads < 1)
+      throw new IllegalArgumentException("threads must be at least 1");
+    String scheduler = get("scheduler","batched");
+    int executionMode;
+    if ("batched".equalsIgnoreCase(scheduler))
+      executionMode = Universe.EXECUTION_MODE_BATCHED;
+    else if ("work-stealing".equalsIgnoreCase(scheduler))
+      executionMode = Universe.EXECUTION_MODE_WORK_STEALING;
+    else throw new IllegalArgumentException("Unrecognized scheduler: "+scheduler);
+
+    Simulation simulation = new Simulation(threads,get("name","Batch"),createRandomSource(),executionMode,"true".equalsIgnoreCase(get("deterministic","false")));
+    try {
+      configure(simulation);
+    } catch (ReflectiveOperationException e) {
+      simulation.kill();
+      throw e;
+    } catch (RuntimeException e) {
+      simulation.kill();
+      throw e;
+    }
+    return simulation;
+  }
+
+  /**
+   * Internal method to set up the universe of a new simulation
+   *
+   * @param simulation Simulation to configure
+   * @throws IllegalArgumentException Invalid configuration value
+   * @throws ReflectiveOperationException Unable to create a condition or probe or call a method on it
+   */
+  private void configure(Simulation simulation)
+    throws IllegalArgumentException,ReflectiveOperationException
+  {
+    Universe universe = simulation.universe();
+
+    universe.setStopPoint(getLong("stopPoint",0L));
+    String sp = get("staticProbability",null);
+    if (sp != null)
+      universe.setStaticProbability(((Float)convertArgument(sp,Float.TYPE,"staticProbability")).floatValue());
+    if ((get("decodeThreshold",null) != null)||(get("compileThreshold",null) != null))
+      universe.setTierThresholds((int)getLong("decodeThreshold",(long)universe.getDecodeThreshold()),(int)getLong("compileThreshold",(long)universe.getCompileThreshold()));
+    if (get("cycleDetection",null) != null)
+      universe.setCycleDetection(!"false".equalsIgnoreCase(get("cycleDetection",null)));
+    universe.setLockstepExecution("true".equalsIgnoreCase(get("lockstepExecution","false")));
+
+    if (!"false".equalsIgnoreCase(get("defaultConditions","true"))) {
+      universe.addCondition(new ReproductionCondition());
+      universe.addCondition(new RandomSourceCondition());
+      universe.addCondition(new EnvironmentalMutationCondition());
+    }
+
+    int[] n = indexes("condition.");
+    for(int i=0;i<n.length;i++) {
+      String prefix = "condition."+n[i];
+      Condition c = (Condition)Class.forName(get(prefix,null)).getDeclaredConstructor().newInstance();
+      universe.addCondition(c);
+      applyMethods(c,prefix+".");
+    }
+
+    n = indexes("probe.");
+    for(int i=0;i<n.length;i++) {
+      String prefix = "probe."+n[i];
+      Probe p = (Probe)Class.forName(get(prefix,null)).getDeclaredConstructor().newInstance();
+      universe.addProbe(p);
+      applyMethods(p,prefix+".");
+    }
+  }
+
+  /**
+   * Internal method to get the sorted indexes of keys like prefix<i>n</i>
+   *
+   * @param prefix Key prefix (e.g. "condition.")
+   * @return Sorted indexes
+   */
+  private int[] indexes(String prefix)
+  {
+    TreeSet s = new TreeSet();
+    for(Enumeration e=properties.propertyNames();e.hasMoreElements();) {
+      String k = (String)e.nextElement();
+      if (k.startsWith(prefix)&&(k.indexOf('.',prefix.length()) < 0)) {
+        try {
+          s.add(Integer.valueOf(Integer.parseInt(k.substring(prefix.length()))));
+        } catch (NumberFormatException ex) {
+          throw new IllegalArgumentException("Bad key: "+k);
+        }
+      }
+    }
+    int[] r = new int[s.size()];
+    int x = 0;
+    for(Iterator i=s.iterator();i.hasNext();)
+      r[x++] = ((Integer)i.next()).intValue();
+    return r;
+  }
+
+  /**
+   * Internal method to call configured methods on a condition or probe
+   *
+   * @param target Object to call methods on
+   * @param prefix Key prefix (e.g. "condition.1.")
+   * @throws IllegalArgumentException No suitable method or bad value
+   * @throws ReflectiveOperationException Method could not be invoked
+   */
+  private void applyMethods(Object target,String prefix)
+    throws IllegalArgumentException,ReflectiveOperationException
+  {
+    // Sort for a predictable order of calls
+    TreeSet keys = new TreeSet();
+    for(Enumeration e=properties.propertyNames();e.hasMoreElements();) {
+      String k = (String)e.nextElement();
+      if (k.startsWith(prefix))
+        keys.add(k);
+    }
+
+    Method[] methods = target.getClass().getMethods();
+    for(Iterator i=keys.iterator();i.hasNext();) {
+      String k = (String)i.next();
+      String name = k.substring(prefix.length());
+      Method m = null;
+      for(int j=0;j<methods.length;j++) {
+        if (methods[j].getName().equals(name)&&(methods[j].getParameterTypes().length == 1)) {
+          m = methods[j];
+          break;
+        }
+      }
+      if (m == null)
+        throw new IllegalArgumentException(k+": "+target.getClass().getName()+" has no public one-argument method named "+name);
+      m.invoke(target,new Object[] { convertArgument(get(k,""),m.getParameterTypes()[0],k) });
+    }
+  }
+
+  /**
+   * Internal method to convert a string to a method argument
+   *
+   * @param value String value
+   * @param type Parameter type
+   * @param key Key (for error messages)
+   * @return Argument object
+   * @throws IllegalArgumentException Value cannot be converted
+   */
+  private static Object convertArgument(String value,Class type,String key)
+    throws IllegalArgumentException
+  {
+    try {
+      if ((type == Integer.TYPE)||(type == Integer.class))
+        return Integer.valueOf(Integer.parseInt(value));
+      else if ((type == Long.TYPE)||(type == Long.class))
+        return Long.valueOf(Long.parseLong(value));
+      else if ((type == Float.TYPE)||(type == Float.class))
+        return Float.valueOf(Float.parseFloat(value));
+      else if ((type == Double.TYPE)||(type == Double.class))
+        return Double.valueOf(Double.parseDouble(value));
+      else if ((type == Boolean.TYPE)||(type == Boolean.class))
+        return Boolean.valueOf(value);
+      else if (type == String.class)
+        return value;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key+": \""+value+"\" is not a valid "+type.getName());
+    }
+    throw new IllegalArgumentException(key+": unsupported parameter type "+type.getName());
+  }
+}
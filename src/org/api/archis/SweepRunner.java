@@ -0,0 +1,307 @@
+package org.api.archis;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>Headless runner for parameter sweeps over many simulations</p>
+ *
+ * <p>This runs every combination of a set of configuration values as a
+ * separate simulation, all sharing one fixed pool of worker threads.
+ * Each simulation runs single-threaded and is driven with
+ * Simulation.tick(), so no simulation or universe threads are created
+ * and the number of busy threads never exceeds the pool size.  Workers
+ * run a quantum of ticks from one simulation and then put it at the back
+ * of the queue, so all active simulations advance at about the same
+ * rate.</p>
+ *
+ * <pre>
+ * java -cp archis.jar org.api.archis.SweepRunner sweep.properties
+ * </pre>
+ *
+ * <p>The configuration file is a SimulationConfiguration that must set a
+ * stopPoint.  In addition, the following keys are recognized:</p>
+ *
+ * <ul>
+ * <li><b>sweep.<i>key</i></b> - Comma-separated values to use for
+ *     <i>key</i> (e.g. sweep.staticProbability=0.0001,0.0005,0.001); every
+ *     combination of all sweep keys is run</li>
+ * <li><b>sweep.workers</b> - Size of the worker pool (default: number of processors)</li>
+ * <li><b>sweep.quantum</b> - Ticks to run before moving on to another simulation (default: 10)</li>
+ * <li><b>sweep.maxActive</b> - Maximum simulations in memory at once (default: 0, all)</li>
+ * <li><b>statisticsInterval</b> - Ticks between statistics reports (default: 100)</li>
+ * <li><b>statisticsFile</b> - File to write statistics to (default: standard output)</li>
+ * </ul>
+ *
+ * <p>Output starts with a comment line for each run giving its swept
+ * values.  Statistics are written as tab-separated lines of run number,
+ * tick, statistic name, and value.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class SweepRunner
+{
+  // Runs not yet started
+  private LinkedList pending;
+
+  // Number of runs not yet finished
+  private int remaining;
+
+  // Number of runs that failed
+  private int failed;
+
+  private ThreadPoolExecutor executor;
+  private PrintWriter out;
+  private long interval;
+  private int quantum;
+
+  /**
+   * A single run of a sweep
+   */
+  private class SweepRun implements Runnable
+  {
+    public int runNumber;
+    public Properties properties;
+    public Simulation simulation;
+
+    public SweepRun(int runNumber,Properties properties)
+    {
+      this.runNumber = runNumber;
+      this.properties = properties;
+      simulation = null;
+    }
+
+    public void run()
+    {
+      boolean done = false;
+      try {
+        if (simulation == null)
+          simulation = new SimulationConfiguration(properties).createSimulation();
+        for(int i=0;i<quantum;i++) {
+          String haltReason = simulation.tick();
+          long clock = simulation.universe().clock();
+          if (((clock % interval) == 0L)||(haltReason != null))
+            report(this);
+          if (haltReason != null) {
+            done = true;
+            break;
+          }
+        }
+      } catch (Throwable t) {
+        synchronized(out) {
+          out.println("# run "+runNumber+" failed: "+t.toString());
+          out.flush();
+        }
+        synchronized(SweepRunner.this) {
+          ++failed;
+        }
+        done = true;
+      }
+
+      if (done)
+        finished(this);
+      else executor.execute(this);
+    }
+  }
+
+  /**
+   * Constructs a new sweep runner
+   *
+   * @param out Writer to write statistics to
+   * @param workers Number of worker threads
+   * @param quantum Ticks to run per scheduling quantum
+   * @param interval Ticks between statistics reports
+   */
+  public SweepRunner(PrintWriter out,int workers,int quantum,long interval)
+  {
+    this.out = out;
+    this.quantum = ((quantum > 0) ? quantum : 1);
+    this.interval = ((interval > 0L) ? interval : 1L);
+    pending = new LinkedList();
+    remaining = 0;
+    failed = 0;
+    executor = new ThreadPoolExecutor(workers,workers,0L,TimeUnit.MILLISECONDS,new LinkedBlockingQueue(),new ThreadFactory() {
+      private int n = 0;
+      public synchronized Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r,"Archis sweep worker "+(++n));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * <p>Runs all the given configurations and waits for them to finish</p>
+   *
+   * <p>Each configuration should run single-threaded and have a stop
+   * point.</p>
+   *
+   * @param configurations Properties for each run
+   * @param maxActive Maximum simulations in memory at once or 0 for no limit
+   * @return Number of runs that failed
+   */
+  public int run(Properties[] configurations,int maxActive)
+  {
+    synchronized(this) {
+      for(int i=0;i<configurations.length;i++)
+        pending.add(new SweepRun(i,configurations[i]));
+      remaining = configurations.length;
+      int n = (((maxActive <= 0)||(maxActive > configurations.length)) ? configurations.length : maxActive);
+      for(int i=0;i<n;i++)
+        executor.execute((Runnable)pending.removeFirst());
+      while (remaining > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {}
+      }
+    }
+    executor.shutdown();
+    out.flush();
+    return failed;
+  }
+
+  /**
+   * Internal method to write a statistics report for a run
+   *
+   * @param r Run
+   */
+  private void report(SweepRun r)
+  {
+    SortedMap stats = r.simulation.getStatistics();
+    long clock = r.simulation.universe().clock();
+    synchronized(out) {
+      BatchRunner.writeStatistics(out,r.runNumber+"\t",clock,stats);
+    }
+  }
+
+  /**
+   * Internal method called when a run finishes
+   *
+   * @param r Run that finished
+   */
+  private void finished(SweepRun r)
+  {
+    if (r.simulation != null) {
+      r.simulation.kill();
+      r.simulation = null;
+    }
+    synchronized(this) {
+      if (pending.size() > 0)
+        executor.execute((Runnable)pending.removeFirst());
+      --remaining;
+      notifyAll();
+    }
+  }
+
+  /**
+   * <p>Expands a configuration into one set of properties per combination of sweep values</p>
+   *
+   * <p>Keys starting with "sweep." are removed from the returned properties.
+   * The description of each run's swept values is placed in descriptions.</p>
+   *
+   * @param base Base configuration
+   * @param descriptions List to add a description of each run to
+   * @return Properties for each run
+   */
+  public static Properties[] expand(Properties base,List descriptions)
+  {
+    // Find swept keys (sorted so run numbering is stable)
+    TreeMap sweeps = new TreeMap();
+    Properties common = new Properties();
+    for(Enumeration e=base.propertyNames();e.hasMoreElements();) {
+      String k = (String)e.nextElement();
+      if (k.startsWith("sweep.")) {
+        String key = k.substring(6);
+        if ((!key.equals("workers"))&&(!key.equals("quantum"))&&(!key.equals("maxActive"))) {
+          StringTokenizer st = new StringTokenizer(base.getProperty(k),",");
+          ArrayList values = new ArrayList();
+          while (st.hasMoreTokens()) {
+            String v = st.nextToken().trim();
+            if (v.length() > 0)
+              values.add(v);
+          }
+          if (values.size() == 0)
+            throw new IllegalArgumentException(k+" has no values");
+          sweeps.put(key,values);
+        }
+      } else common.setProperty(k,base.getProperty(k));
+    }
+
+    String[] keys = (String[])sweeps.keySet().toArray(new String[sweeps.size()]);
+    int count = 1;
+    for(int i=0;i<keys.length;i++)
+      count *= ((List)sweeps.get(keys[i])).size();
+
+    // Enumerate combinations with the last key varying fastest
+    Properties[] r = new Properties[count];
+    for(int n=0;n<count;n++) {
+      r[n] = new Properties();
+      r[n].putAll(common);
+      StringBuffer desc = new StringBuffer();
+      int x = n;
+      for(int i=keys.length-1;i>=0;i--) {
+        List values = (List)sweeps.get(keys[i]);
+        String v = (String)values.get(x % values.size());
+        x /= values.size();
+        r[n].setProperty(keys[i],v);
+        desc.insert(0,((i > 0) ? " " : "")+keys[i]+"="+v);
+      }
+      descriptions.add(desc.toString());
+    }
+    return r;
+  }
+
+  /**
+   * Main method
+   *
+   * @param argv Command line arguments (configuration file)
+   */
+  public static void main(String[] argv)
+  {
+    // Make sure nothing tries to open a display
+    System.setProperty("java.awt.headless","true");
+
+    if (argv.length != 1) {
+      System.err.println("Usage: SweepRunner <configuration file>");
+      System.exit(1);
+    }
+
+    PrintWriter out = null;
+    int failed = 0;
+    try {
+      SimulationConfiguration config = new SimulationConfiguration(new File(argv[0]));
+      if (config.getLong("stopPoint",0L) <= 0L)
+        throw new IllegalArgumentException("stopPoint must be set for a sweep");
+      if (config.getLong("threads",1L) != 1L)
+        System.err.println("Warning: sweeps run each simulation single-threaded, ignoring threads setting");
+
+      Properties base = config.getProperties();
+      base.setProperty("threads","1");
+      ArrayList descriptions = new ArrayList();
+      Properties[] runs = expand(base,descriptions);
+
+      String statisticsFile = config.get("statisticsFile",null);
+      if (statisticsFile == null)
+        out = new PrintWriter(new OutputStreamWriter(System.out));
+      else out = new PrintWriter(new BufferedWriter(new FileWriter(statisticsFile)));
+      for(int i=0;i<runs.length;i++)
+        out.println("# run "+i+": "+descriptions.get(i));
+
+      int workers = (int)config.getLong("sweep.workers",(long)Runtime.getRuntime().availableProcessors());
+      SweepRunner sr = new SweepRunner(out,((workers > 0) ? workers : 1),(int)config.getLong("sweep.quantum",10L),config.getLong("statisticsInterval",100L));
+      failed = sr.run(runs,(int)config.getLong("sweep.maxActive",0L));
+      System.err.println("Finished "+runs.length+" runs ("+failed+" failed)");
+    } catch (Throwable t) {
+      t.printStackTrace();
+      System.exit(1);
+    } finally {
+      if (out != null)
+        out.close();
+    }
+    System.exit((failed > 0) ? 1 : 0);
+  }
+}
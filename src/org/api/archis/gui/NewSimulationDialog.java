@@ -40,6 +40,9 @@ public class NewSimulationDialog extends JFrame
   JLabel jLabel4 = new JLabel();
   JTextField randomSeedTextField = new JTextField();
   JLabel jLabel5 = new JLabel();
+  JLabel jLabel6 = new JLabel();
+  JComboBox schedulerComboBox = new JComboBox();
+  JCheckBox deterministicCheckBox = new JCheckBox();
 
   public NewSimulationDialog(java.util.List simulations)
   {
@@ -50,13 +53,17 @@ public class NewSimulationDialog extends JFrame
     catch(Exception e) {
       e.printStackTrace();
     }
-    this.setSize(450,210);
+    this.setSize(450,260);
     this.setIconImage(Archis.ICON);
     this.setLocation(170,170);
     prngComboBox.addItem("Mersenne Twister");
+    prngComboBox.addItem("Thread-Local SplitMix64 (lock-free)");
     prngComboBox.addItem("Java Built-in PRNG");
     prngComboBox.addItem("Non-Random Fake Generator");
     prngComboBox.setSelectedItem("Mersenne Twister");
+    schedulerComboBox.addItem("Fixed Batches");
+    schedulerComboBox.addItem("Work Stealing");
+    schedulerComboBox.setSelectedItem("Fixed Batches");
     randomSeedTextField.setText(Long.toString(System.currentTimeMillis()));
   }
   private void jbInit() throws Exception
@@ -89,6 +96,10 @@ public class NewSimulationDialog extends JFrame
     jLabel5.setHorizontalAlignment(SwingConstants.RIGHT);
     jLabel5.setHorizontalTextPosition(SwingConstants.RIGHT);
     jLabel5.setText("(Suggested Value Derived from Clock)");
+    jLabel6.setHorizontalAlignment(SwingConstants.RIGHT);
+    jLabel6.setHorizontalTextPosition(SwingConstants.RIGHT);
+    jLabel6.setText("Cell Scheduler:");
+    deterministicCheckBox.setText("Deterministic (same results with any number of threads)");
     contentPane.add(jLabel1,        new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0
             ,GridBagConstraints.CENTER, GridBagConstraints.HORIZONTAL, new Insets(5, 5, 0, 5), 0, 0));
     contentPane.add(jLabel2,          new GridBagConstraints(0, 0, 1, 1, 0.0, 0.0
@@ -111,6 +122,12 @@ public class NewSimulationDialog extends JFrame
             ,GridBagConstraints.CENTER, GridBagConstraints.HORIZONTAL, new Insets(5, 0, 0, 5), 0, 0));
     contentPane.add(jLabel5,   new GridBagConstraints(0, 4, 2, 1, 0.0, 0.0
             ,GridBagConstraints.CENTER, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 5, 5), 0, 0));
+    contentPane.add(jLabel6,   new GridBagConstraints(0, 5, 1, 1, 0.0, 0.0
+            ,GridBagConstraints.CENTER, GridBagConstraints.HORIZONTAL, new Insets(5, 5, 0, 5), 0, 0));
+    contentPane.add(schedulerComboBox,   new GridBagConstraints(1, 5, 1, 1, 1.0, 0.0
+            ,GridBagConstraints.CENTER, GridBagConstraints.HORIZONTAL, new Insets(5, 0, 0, 5), 0, 0));
+    contentPane.add(deterministicCheckBox,   new GridBagConstraints(0, 6, 2, 1, 0.0, 0.0
+            ,GridBagConstraints.CENTER, GridBagConstraints.NONE, new Insets(5, 5, 0, 5), 0, 0));
   }
 
   void jButton2_actionPerformed(ActionEvent e) {
@@ -122,6 +139,8 @@ public class NewSimulationDialog extends JFrame
       Object prngSelected = prngComboBox.getSelectedItem();
       if ("Mersenne Twister".equals(prngSelected)) {
         prng = new MersenneTwisterRandomSource(seed);
+      } else if ("Thread-Local SplitMix64 (lock-free)".equals(prngSelected)) {
+        prng = new ThreadLocalRandomSource(seed);
       } else if ("Java Built-in PRNG".equals(prngSelected)) {
         prng = new JavaBuiltinRandomSource(seed);
       } else if ("Non-Random Fake Generator".equals(prngSelected)) {
@@ -129,7 +148,8 @@ public class NewSimulationDialog extends JFrame
       }
       if (prng == null)
         throw new RuntimeException("Internal error: bad selected PRNG!");
-      Simulation simulation = new Simulation(threads,nameTextField.getText().trim(),prng);
+      int executionMode = ("Work Stealing".equals(schedulerComboBox.getSelectedItem()) ? Universe.EXECUTION_MODE_WORK_STEALING : Universe.EXECUTION_MODE_BATCHED);
+      Simulation simulation = new Simulation(threads,nameTextField.getText().trim(),prng,executionMode,deterministicCheckBox.isSelected());
       simulation.universe().addCondition(new ReproductionCondition());
       simulation.universe().addCondition(new RandomSourceCondition());
       simulation.universe().addCondition(new EnvironmentalMutationCondition());
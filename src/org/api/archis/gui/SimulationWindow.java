@@ -157,6 +157,8 @@ public class SimulationWindow extends JFrame implements SimulationObserver
       rewardFunctions.addCondition(Class.forName("org.api.archis.universe.rewardfunctions.DiversityRewardFunction"));
       probes.addProbe(Class.forName("org.api.archis.universe.probes.CompressibilityProbe"));
       probes.addProbe(Class.forName("org.api.archis.universe.probes.GenesisProbe"));
+      probes.addProbe(Class.forName("org.api.archis.universe.probes.ExecutionTierProbe"));
+      probes.addProbe(Class.forName("org.api.archis.universe.probes.GenomePoolProbe"));
     } catch (ClassNotFoundException e) {
       System.out.println("Part of this program seems to be missing!");
       e.printStackTrace();
@@ -20,8 +20,21 @@ public class Cell
   // Internal static copy of a common DeathException
   private static DeathException starvationDeathException = new DeathException("Starvation");
 
-  // Internal ID counter
-  private static volatile long idCounter = 0L;
+  // Cell attributes are kept in blocks of (1 << ATTRIBUTE_BLOCK_SHIFT)
+  private static final int ATTRIBUTE_BLOCK_SHIFT = 4;
+  private static final int ATTRIBUTE_BLOCK_MASK = (1 << ATTRIBUTE_BLOCK_SHIFT) - 1;
+
+  // Number of heartbeats during which a cell whose genome can neither read
+  // nor write is watched for its memory settling down (see idle())
+  private static final int IDLE_CHECK_HEARTBEATS = 4;
+
+  // Per-thread copy of memory used to see whether execution changed it
+  private static ThreadLocal memorySnapshot = new ThreadLocal() {
+    protected Object initialValue()
+    {
+      return new int[Archis.CELL_STATE_MEMORY_SIZE];
+    }
+  };
 
   // Is cell alive?
   private boolean alive;
@@ -50,13 +63,23 @@ public class Cell
   // Universe that we belong to
   private Universe output;
 
-  // Cell meta-info (can be used by universe, etc.)
+  // Values of cell attributes in blocks by index (null until one is set,
+  // see CellAttribute); blocks are created and this array is replaced only
+  // while locked, and blocks are never copied, so a value set in one
+  // thread is never lost when another thread makes room for an attribute
+  private volatile Object[][] attributes;
+
+  // Cell meta-info (null until some is set)
   private HashMap metaInfo;
 
   // Information about why we were killed (if killed)
   private String killReason;
   private boolean killZeroEnergy;
 
+  // Instructions executed every heartbeat if the genome is known to do
+  // nothing else (see idle()), -1 if not, or -2 if not known yet
+  private int idleInstructions;
+
   /**
    * Constructs a new cell with the given genetic code
    *
@@ -70,7 +93,6 @@ public class Cell
   {
     memory = new int[Archis.CELL_STATE_MEMORY_SIZE];
     input = new IntegerInput[Archis.CHANNEL_COUNT];
-    metaInfo = new HashMap(16,0.95F);
     this.output = output;
     this.genome = genome;
     this.origin = simulation.getName();
@@ -80,10 +102,9 @@ public class Cell
     alive = true;
     killReason = null;
     killZeroEnergy = false;
+    idleInstructions = -2;
 
-    id = ++idCounter;
-    if (idCounter >= Long.MAX_VALUE)
-      idCounter = 0L;
+    id = simulation.newCellId();
     if (parent != null) {
       parentId = parent.id;
       generation = parent.generation+1L;
@@ -99,7 +120,10 @@ public class Cell
    */
   public void setGenome(Genome newGenome)
   {
+    Genome oldGenome = genome;
     this.genome = newGenome.canonicalize();
+    oldGenome.release();
+    idleInstructions = -2;
   }
 
   /**
@@ -107,7 +131,22 @@ public class Cell
    */
   public void canonicalizeGenome()
   {
+    Genome oldGenome = genome;
     genome = genome.canonicalize();
+    oldGenome.release();
+  }
+
+  /**
+   * <p>Gives back this cell's reference to its genome</p>
+   *
+   * <p>The universe calls this once when a cell leaves it (whether it has
+   * died or was never born), so that a canonical genome no living cell
+   * uses any more is dropped from the genome pool.  The cell's genome is
+   * still available afterwards.</p>
+   */
+  public void releaseGenome()
+  {
+    genome.release();
   }
 
   /**
@@ -182,6 +221,22 @@ public class Cell
     } else energy -= amount;
   }
 
+  /**
+   * <p>Returns how much energy can be spent without starving</p>
+   *
+   * <p>Genome VMs use this to charge for instructions in batches instead
+   * of calling decEnergy() for every instruction.  Spending up to this
+   * amount with decEnergy(int) never kills the cell.</p>
+   *
+   * @return Spendable energy (2147483647 if cell is already dead)
+   */
+  public int spendableEnergy()
+  {
+    if (alive)
+      return ((energy > 0) ? (energy - 1) : 0);
+    return 2147483647;
+  }
+
   /**
    * Sets the input source for a channel on the next run
    *
@@ -202,15 +257,16 @@ public class Cell
     throws DeathException
   {
     if (alive) {
-      if (killReason != null) {
-        if (killZeroEnergy)
-          energy = 0;
-        onDeath(killReason);
-        throw new DeathException(killReason);
-      }
+      checkKilled();
 
       try {
-        genome.execute(input,output,this,memory);
+        if (watchForIdle()) {
+          int[] before = (int[])memorySnapshot.get();
+          System.arraycopy(memory,0,before,0,memory.length);
+          int n = genome.execute(input,output,this,memory);
+          if (Arrays.equals(before,memory))
+            idleInstructions = n;
+        } else genome.execute(input,output,this,memory);
       } catch (DeathException e) {
         onDeath(e.getCauseOfDeath());
         throw e;
@@ -221,12 +277,7 @@ public class Cell
         throw new DeathException(r);
       }
 
-      if (killReason != null) {
-        if (killZeroEnergy)
-          energy = 0;
-        onDeath(killReason);
-        throw new DeathException(killReason);
-      }
+      checkKilled();
 
       // Reset inputs for next round
       for(int i=0;i<input.length;i++)
@@ -236,6 +287,147 @@ public class Cell
     }
   }
 
+  /**
+   * <p>Does everything heartbeat() would, given the result of executing
+   * the genome that was worked out in advance</p>
+   *
+   * <p>This is for executing the genomes of several cells at once (e.g.
+   * in lockstep).  It only applies if the genome can neither read input
+   * nor write output and this cell's memory is still exactly what the
+   * result was worked out from; otherwise it does nothing and returns
+   * false, and the cell should be run with heartbeat().  The cell is
+   * charged for the instructions and starves at the same point, as it
+   * would if the genome were executed.</p>
+   *
+   * @param before Memory the result was worked out from
+   * @param after Memory after executing the genome
+   * @param instructions Number of instructions executed
+   * @return True if the heartbeat was done
+   * @throws DeathException Death occurred for some reason
+   */
+  public boolean heartbeat(int[] before,int[] after,int instructions)
+    throws DeathException
+  {
+    if (alive) {
+      if (!Arrays.equals(before,memory))
+        return false;
+
+      checkKilled();
+
+      try {
+        if (watchForIdle()&&Arrays.equals(before,after))
+          idleInstructions = instructions;
+        int e = spendableEnergy();
+        if (instructions <= e)
+          energy -= instructions;
+        else {
+          energy -= e;
+          decEnergy();
+        }
+        System.arraycopy(after,0,memory,0,memory.length);
+      } catch (DeathException e) {
+        onDeath(e.getCauseOfDeath());
+        throw e;
+      }
+
+      checkKilled();
+
+      for(int i=0;i<input.length;i++)
+        input[i] = null;
+
+      ++age;
+    }
+    return true;
+  }
+
+  /**
+   * Internal method to see whether this cell is being watched to see if it is idle
+   *
+   * @return True if executions should be checked for leaving memory unchanged
+   */
+  private boolean watchForIdle()
+  {
+    // A genome that can neither read nor write behaves the same every
+    // time its memory is the same, so for the first few heartbeats
+    // see whether running it leaves memory unchanged
+    if (idleInstructions == -2) {
+      int f = genome.analysisFlags();
+      if ((f & Genome.ANALYSIS_INERT) != 0)
+        idleInstructions = 0;
+      else if (((f & (Genome.ANALYSIS_OUTPUT_FREE|Genome.ANALYSIS_READ_FREE)) != (Genome.ANALYSIS_OUTPUT_FREE|Genome.ANALYSIS_READ_FREE))||(age >= (long)IDLE_CHECK_HEARTBEATS))
+        idleInstructions = -1;
+    }
+    return (idleInstructions == -2);
+  }
+
+  /**
+   * <p>Returns whether this cell's heartbeat is known to do nothing but
+   * spend a fixed number of instructions</p>
+   *
+   * <p>This is true if the genome never executes anything, or if it can
+   * neither read input nor write output and executing it once left memory
+   * unchanged (so every later execution will do exactly the same thing).
+   * An idle cell can be run with idleHeartbeat() instead of
+   * heartbeat().</p>
+   *
+   * @return True if cell is idle
+   */
+  public boolean idle()
+  {
+    return (idleInstructions >= 0);
+  }
+
+  /**
+   * <p>Does everything heartbeat() would for an idle cell without
+   * executing its genome</p>
+   *
+   * <p>The cell is charged for the same number of instructions, and
+   * starves at the same point with the same energy left, as it would be
+   * if the genome were executed.</p>
+   *
+   * @throws DeathException Death occurred for some reason
+   */
+  public void idleHeartbeat()
+    throws DeathException
+  {
+    if (alive) {
+      checkKilled();
+
+      int n = idleInstructions;
+      int e = spendableEnergy();
+      if (n <= e)
+        energy -= n;
+      else {
+        // Starve on the instruction the genome would have starved on
+        energy -= e;
+        decEnergy();
+      }
+
+      checkKilled();
+
+      for(int i=0;i<input.length;i++)
+        input[i] = null;
+
+      ++age;
+    }
+  }
+
+  /**
+   * Internal method to die now if this cell has been killed
+   *
+   * @throws DeathException Cell has been killed
+   */
+  private void checkKilled()
+    throws DeathException
+  {
+    if (killReason != null) {
+      if (killZeroEnergy)
+        energy = 0;
+      onDeath(killReason);
+      throw new DeathException(killReason);
+    }
+  }
+
   /**
    * Kill this cell
    *
@@ -331,6 +523,109 @@ public class Cell
     return memory;
   }
 
+  /**
+   * Gets the value of an attribute
+   *
+   * @param attribute Attribute
+   * @return Value or null if not set
+   */
+  public Object getAttribute(CellAttribute attribute)
+  {
+    Object[][] a = attributes;
+    int b = attribute.index >> ATTRIBUTE_BLOCK_SHIFT;
+    if ((a == null)||(b >= a.length)||(a[b] == null))
+      return null;
+    return a[b][attribute.index & ATTRIBUTE_BLOCK_MASK];
+  }
+
+  /**
+   * Sets the value of an attribute
+   *
+   * @param attribute Attribute
+   * @param value Value (an instance of the attribute's type) or null to clear it
+   * @throws IllegalArgumentException Value is not of the attribute's type
+   */
+  public void setAttribute(CellAttribute attribute,Object value)
+    throws IllegalArgumentException
+  {
+    if ((value != null)&&(!attribute.type().isInstance(value)))
+      throw new IllegalArgumentException("Cell attribute "+attribute.name()+" must be a "+attribute.type().getName());
+    attributeBlock(attribute)[attribute.index & ATTRIBUTE_BLOCK_MASK] = value;
+  }
+
+  /**
+   * Clears an attribute
+   *
+   * @param attribute Attribute
+   * @return Previous value or null if not set
+   */
+  public Object removeAttribute(CellAttribute attribute)
+  {
+    Object[][] a = attributes;
+    int b = attribute.index >> ATTRIBUTE_BLOCK_SHIFT;
+    if ((a == null)||(b >= a.length)||(a[b] == null))
+      return null;
+    int i = attribute.index & ATTRIBUTE_BLOCK_MASK;
+    Object v = a[b][i];
+    a[b][i] = null;
+    return v;
+  }
+
+  /**
+   * <p>Sets an attribute if it is not set, synchronized with other threads</p>
+   *
+   * <p>This is for attributes that other threads may create while this
+   * cell is executing.  Every thread creating the attribute should use
+   * this so that they all end up with the same value.</p>
+   *
+   * @param attribute Attribute
+   * @param value Value to set if the attribute is not set
+   * @return Current value (value if it was not set)
+   * @throws IllegalArgumentException Value is not of the attribute's type
+   */
+  public synchronized Object attachAttribute(CellAttribute attribute,Object value)
+    throws IllegalArgumentException
+  {
+    Object v = getAttribute(attribute);
+    if (v != null)
+      return v;
+    setAttribute(attribute,value);
+    return value;
+  }
+
+  /**
+   * <p>Internal method to get the block holding an attribute, creating it if needed</p>
+   *
+   * <p>Creating blocks and replacing the array of blocks is synchronized
+   * on this cell, the same as attachAttribute().</p>
+   *
+   * @param attribute Attribute
+   * @return Block with an element for attribute
+   */
+  private Object[] attributeBlock(CellAttribute attribute)
+  {
+    int b = attribute.index >> ATTRIBUTE_BLOCK_SHIFT;
+    Object[][] a = attributes;
+    if ((a != null)&&(b < a.length)&&(a[b] != null))
+      return a[b];
+
+    synchronized(this) {
+      a = attributes;
+      if ((a == null)||(b >= a.length)) {
+        // Make room for every attribute registered so far at once, so the
+        // array is rarely replaced once a cell is running
+        int n = ((CellAttribute.count() + ATTRIBUTE_BLOCK_MASK) >> ATTRIBUTE_BLOCK_SHIFT);
+        Object[][] na = new Object[((n > b) ? n : (b + 1))][];
+        if (a != null)
+          System.arraycopy(a,0,na,0,a.length);
+        attributes = a = na;
+      }
+      if (a[b] == null)
+        a[b] = new Object[1 << ATTRIBUTE_BLOCK_SHIFT];
+      return a[b];
+    }
+  }
+
   /**
    * <p>Sets a piece of meta info</p>
    *
@@ -340,14 +635,17 @@ public class Cell
    * the life of the cell object.
    * </p>
    *
+   * <p>Meta-info is kept in a hash table locked on every access.  State
+   * that is accessed every tick should be kept in a CellAttribute instead.</p>
+   *
    * @param key Key for meta info
    * @param value Value (any object)
    */
-  public void setMetaInfo(Object key,Object value)
+  public synchronized void setMetaInfo(Object key,Object value)
   {
-    synchronized(metaInfo) {
-      metaInfo.put(key,value);
-    }
+    if (metaInfo == null)
+      metaInfo = new HashMap(4,0.75F);
+    metaInfo.put(key,value);
   }
 
   /**
@@ -356,11 +654,9 @@ public class Cell
    * @param key Key for meta info
    * @return Value or null if not found
    */
-  public Object getMetaInfo(Object key)
+  public synchronized Object getMetaInfo(Object key)
   {
-    synchronized(metaInfo) {
-      return metaInfo.get(key);
-    }
+    return ((metaInfo == null) ? null : metaInfo.get(key));
   }
 
   /**
@@ -369,10 +665,8 @@ public class Cell
    * @param key Key to remove
    * @return Value of key or null if key was not set
    */
-  public Object removeMetaInfo(Object key)
+  public synchronized Object removeMetaInfo(Object key)
   {
-    synchronized(metaInfo) {
-      return metaInfo.remove(key);
-    }
+    return ((metaInfo == null) ? null : metaInfo.remove(key));
   }
 }
@@ -0,0 +1,126 @@
+package org.api.archis.life;
+
+import java.util.*;
+
+/**
+ * <p>A typed slot for per-cell state kept by conditions and probes</p>
+ *
+ * <p>Conditions register the attributes they need in init() and then get
+ * and set them on cells with Cell.getAttribute() and Cell.setAttribute().
+ * Each attribute has a fixed index into an array in each cell, so these
+ * are an array access with no hashing or locking.  Registration is
+ * JVM-wide and by name, so registering the same name again (e.g. from
+ * another instance of the same condition) returns the same attribute.</p>
+ *
+ * <p>Attribute accessors are not synchronized.  A cell's attributes should
+ * only be set by the thread executing it (e.g. in preExecutionNotify or
+ * evaluateOutput) or while no cells are executing (e.g. in preTickNotify,
+ * postTickNotify, or newCellNotify).  An attribute holding an object that
+ * other threads add to while the cell may be executing should be created
+ * with Cell.attachAttribute(), which is synchronized.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public final class CellAttribute
+{
+  // Registered attributes by name and by index
+  private static HashMap attributesByName = new HashMap();
+  private static ArrayList attributes = new ArrayList();
+
+  // Number of registered attributes (read by cells without locking)
+  private static volatile int count = 0;
+
+  private String name;
+  private Class type;
+  int index;
+
+  /**
+   * Internal constructor used by register()
+   *
+   * @param name Name
+   * @param type Type of values
+   * @param index Index in cells' attribute arrays
+   */
+  private CellAttribute(String name,Class type,int index)
+  {
+    this.name = name;
+    this.type = type;
+    this.index = index;
+  }
+
+  /**
+   * <p>Registers an attribute or gets the one already registered</p>
+   *
+   * <p>Names should be prefixed by something unique to the condition or
+   * probe registering them (e.g. "L2D_" for Landscape2D).</p>
+   *
+   * @param name Attribute name
+   * @param type Class of values (values must be instances of it)
+   * @return Attribute
+   * @throws IllegalArgumentException Name already registered with a different type
+   */
+  public static CellAttribute register(String name,Class type)
+    throws IllegalArgumentException
+  {
+    synchronized(attributesByName) {
+      CellAttribute a = (CellAttribute)attributesByName.get(name);
+      if (a != null) {
+        if (a.type != type)
+          throw new IllegalArgumentException("Cell attribute "+name+" is already registered with type "+a.type.getName());
+        return a;
+      }
+      a = new CellAttribute(name,type,attributes.size());
+      attributes.add(a);
+      attributesByName.put(name,a);
+      count = attributes.size();
+      return a;
+    }
+  }
+
+  /**
+   * Gets the number of registered attributes
+   *
+   * @return Number of attributes
+   */
+  public static int count()
+  {
+    return count;
+  }
+
+  /**
+   * Gets this attribute's name
+   *
+   * @return Name
+   */
+  public String name()
+  {
+    return name;
+  }
+
+  /**
+   * Gets the class of this attribute's values
+   *
+   * @return Value type
+   */
+  public Class type()
+  {
+    return type;
+  }
+
+  /**
+   * Gets this attribute's index in cells' attribute arrays
+   *
+   * @return Index
+   */
+  public int index()
+  {
+    return index;
+  }
+
+  public String toString()
+  {
+    return name;
+  }
+}
@@ -9,6 +9,25 @@ import org.api.archis.utils.*;
 
 public interface Genome extends Externalizable
 {
+  //
+  // Static analysis flags returned by analysisFlags()
+  //
+
+  /**
+   * Genome never executes any instructions
+   */
+  public static final int ANALYSIS_INERT = 0x1;
+
+  /**
+   * Genome can never write output
+   */
+  public static final int ANALYSIS_OUTPUT_FREE = 0x2;
+
+  /**
+   * Genome can never read input
+   */
+  public static final int ANALYSIS_READ_FREE = 0x4;
+
   /**
    * Constructs a new genome of the same type
    *
@@ -46,16 +65,33 @@ public interface Genome extends Externalizable
    */
   Genome createNew(RandomSource randomSource,int meanSize,int sizeDeviation);
 
+  /**
+   * <p>Creates a builder for a child of this genome output a codon at a time</p>
+   *
+   * <p>This is faster than collecting the codons and calling createNew()
+   * and then canonicalize(), since an exact copy of this genome is
+   * recognized as it is output and just shares this genome.</p>
+   *
+   * @return New genome builder
+   */
+  GenomeBuilder createChildBuilder();
+
   /**
    * <p>Returns a 'canonical' equivalent copy of this genome.</p>
    *
    * <p>
-   * This method works by maintaining an internal Map with weak keys and
-   * values containing genomes.  When this is called, any equivalent genomes
-   * within this Map are returned.  Otherwise, the current genome is added
-   * to the map and the method returns itself.  The result of using this is
-   * to ensure that only one copy of each genome actually resides in memory.
-   * Use of this method saves memory at the expense of a small CPU overhead.
+   * This method works by maintaining an internal pool of genomes (see
+   * GenomePool).  When this is called, any equivalent genome within the
+   * pool is returned.  Otherwise, the current genome is added to the pool
+   * and the method returns itself.  The result of using this is to ensure
+   * that only one copy of each genome actually resides in memory.  Use of
+   * this method saves memory at the expense of a small CPU overhead.
+   * </p>
+   *
+   * <p>
+   * Each call takes a reference to the returned genome, which must be
+   * given back with release() on the returned genome when it is no longer
+   * used.  Cells do this when they leave the universe.
    * </p>
    *
    * <p>
@@ -66,6 +102,15 @@ public interface Genome extends Externalizable
    */
   Genome canonicalize();
 
+  /**
+   * <p>Gives back a reference taken by canonicalize()</p>
+   *
+   * <p>A canonical genome is dropped from the pool when its last
+   * reference is given back.  This does nothing for genomes that are not
+   * canonical.</p>
+   */
+  void release();
+
   /**
    * Returns a genome with a single point mutation from this one
    *
@@ -81,6 +126,28 @@ public interface Genome extends Externalizable
    */
   int checksum();
 
+  /**
+   * <p>Calculates a 64-bit checksum of this genome</p>
+   *
+   * <p>This is a well mixed hash of the whole genome, so distinct genomes
+   * practically never share one.  Use it rather than checksum() to
+   * classify genomes, and to look them up in tables (e.g. GenomePool).</p>
+   *
+   * @return 64-bit checksum value
+   */
+  long checksum64();
+
+  /**
+   * <p>Returns flags describing what this genome can ever do</p>
+   *
+   * <p>These are found by static analysis of the code, which is done once
+   * when a genome is canonicalized (or on the first call).  A flag is only
+   * set if it holds for every possible execution.</p>
+   *
+   * @return ANALYSIS_ flags
+   */
+  int analysisFlags();
+
   /**
    * Executes the genome and returns the resulting output
    *
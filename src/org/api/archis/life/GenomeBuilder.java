@@ -0,0 +1,42 @@
+package org.api.archis.life;
+
+/**
+ * <p>Builds a child genome from values output a codon at a time</p>
+ *
+ * <p>Builders are created by Genome.createChildBuilder() and compare what
+ * is output against the parent genome as it arrives, so a child that is
+ * an exact copy of its parent can share the parent's canonical genome
+ * without building anything.</p>
+ *
+ * <p>A builder is not thread-safe and can build only one genome.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public interface GenomeBuilder
+{
+  /**
+   * Appends a codon
+   *
+   * @param value Value output (only the bits significant to the genome type are used)
+   */
+  void append(int value);
+
+  /**
+   * Gets the number of codons appended so far
+   *
+   * @return Size in codons
+   */
+  int size();
+
+  /**
+   * <p>Gets the canonical genome built from the codons appended</p>
+   *
+   * <p>Like Genome.canonicalize(), this takes a reference to the returned
+   * genome that must be given back with its release() method.</p>
+   *
+   * @return Canonical genome
+   */
+  Genome build();
+}
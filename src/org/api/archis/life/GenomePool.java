@@ -0,0 +1,301 @@
+package org.api.archis.life;
+
+/**
+ * <p>Concurrent pool of canonical genomes counted by the cells using them</p>
+ *
+ * <p>Genomes are kept in a number of independently locked stripes chosen
+ * by 64-bit checksum (see Genome.checksum64()), so threads interning or
+ * releasing different genomes rarely wait for each other.  Each pooled
+ * genome has a count of the references handed out by intern() and not yet
+ * given back by release().  When the count reaches zero the genome is
+ * removed from the pool at once, so nothing is left for the garbage
+ * collector to clear from the pool and the pool only ever holds genomes
+ * in use.</p>
+ *
+ * <p>The pool holds at most a fixed number of genomes.  Once a stripe is
+ * full, new genomes that hash to it are returned as they are without
+ * being pooled (release() ignores genomes that are not pooled), so a
+ * leaked reference can never make the pool grow without bound.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public final class GenomePool
+{
+  /**
+   * Default maximum number of genomes in a pool
+   */
+  public static final int DEFAULT_CAPACITY = 4194304;
+
+  // Number of stripes (must be a power of two)
+  private static final int STRIPES = 64;
+
+  // Initial buckets per stripe (must be a power of two)
+  private static final int INITIAL_BUCKETS = 256;
+
+  // Internal class for a pooled genome and its reference count
+  private static final class Entry
+  {
+    public Genome genome;
+    public long hash;
+    public int refs;
+    public int sizeBytes;
+    public Entry next;
+  }
+
+  // Internal class for a stripe: a chained hash table and its counters
+  private static final class Stripe
+  {
+    public Entry[] buckets;
+    public int size;
+    public long hits,misses;
+    public long savedBytes;
+  }
+
+  private Stripe[] stripes;
+  private int stripeCapacity;
+
+  /**
+   * Constructs a new empty genome pool
+   *
+   * @param capacity Maximum number of genomes to pool
+   */
+  public GenomePool(int capacity)
+  {
+    stripes = new Stripe[STRIPES];
+    for(int i=0;i<STRIPES;i++) {
+      stripes[i] = new Stripe();
+      stripes[i].buckets = new Entry[INITIAL_BUCKETS];
+    }
+    stripeCapacity = ((capacity > STRIPES) ? (capacity / STRIPES) : 1);
+  }
+
+  /**
+   * <p>Gets the pooled genome equal to a genome and takes a reference to it</p>
+   *
+   * <p>If there is none, the genome itself is pooled.  Either way the
+   * caller must give the reference back with release() when it stops
+   * using the result.</p>
+   *
+   * @param g Genome
+   * @return Pooled genome equal to g, or g itself if it is now pooled or the pool is full
+   */
+  public Genome intern(Genome g)
+  {
+    long h = g.checksum64();
+    Stripe s = stripes[(int)h & (STRIPES - 1)];
+    synchronized(s) {
+      Entry[] b = s.buckets;
+      for(Entry e=b[bucket(h,b)];e!=null;e=e.next) {
+        if ((e.hash == h)&&e.genome.equals(g)) {
+          ++e.refs;
+          ++s.hits;
+          s.savedBytes += (long)e.sizeBytes;
+          return e.genome;
+        }
+      }
+
+      ++s.misses;
+      if (s.size >= stripeCapacity)
+        return g;
+      if (s.size >= b.length)
+        b = grow(s);
+      Entry e = new Entry();
+      e.genome = g;
+      e.hash = h;
+      e.refs = 1;
+      e.sizeBytes = g.sizeBytes();
+      int n = bucket(h,b);
+      e.next = b[n];
+      b[n] = e;
+      ++s.size;
+    }
+    return g;
+  }
+
+  /**
+   * <p>Takes another reference to a genome if it is pooled</p>
+   *
+   * <p>This is the same as intern() for a genome returned by intern() that
+   * has not been given back, but only looks for the genome itself, so it
+   * never compares genomes.</p>
+   *
+   * @param g Genome
+   * @return True if g is pooled and a reference was taken, false if not
+   */
+  public boolean acquire(Genome g)
+  {
+    long h = g.checksum64();
+    Stripe s = stripes[(int)h & (STRIPES - 1)];
+    synchronized(s) {
+      Entry[] b = s.buckets;
+      for(Entry e=b[bucket(h,b)];e!=null;e=e.next) {
+        if (e.genome == g) {
+          ++e.refs;
+          ++s.hits;
+          s.savedBytes += (long)e.sizeBytes;
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * <p>Gives back a reference taken by intern() or acquire()</p>
+   *
+   * <p>The genome is removed from the pool when its last reference is
+   * given back.  Genomes that are not pooled (i.e. that were not returned
+   * by intern()) are ignored.</p>
+   *
+   * @param g Genome returned by intern()
+   */
+  public void release(Genome g)
+  {
+    long h = g.checksum64();
+    Stripe s = stripes[(int)h & (STRIPES - 1)];
+    synchronized(s) {
+      Entry[] b = s.buckets;
+      int n = bucket(h,b);
+      for(Entry e=b[n],prev=null;e!=null;prev=e,e=e.next) {
+        if (e.genome == g) {
+          if (--e.refs > 0)
+            s.savedBytes -= (long)e.sizeBytes;
+          else {
+            if (prev == null)
+              b[n] = e.next;
+            else prev.next = e.next;
+            --s.size;
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Removes every genome from the pool</p>
+   *
+   * <p>References that are still held are no longer counted, and giving
+   * them back later does nothing since release() ignores genomes that are
+   * not pooled.  Hit and miss counts are kept.</p>
+   */
+  public void clear()
+  {
+    for(int i=0;i<STRIPES;i++) {
+      synchronized(stripes[i]) {
+        stripes[i].buckets = new Entry[INITIAL_BUCKETS];
+        stripes[i].size = 0;
+        stripes[i].savedBytes = 0L;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of genomes in the pool
+   *
+   * @return Number of pooled genomes
+   */
+  public int size()
+  {
+    int n = 0;
+    for(int i=0;i<STRIPES;i++) {
+      synchronized(stripes[i]) {
+        n += stripes[i].size;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Gets the number of calls to intern() that found an equal pooled genome
+   *
+   * @return Number of hits since the pool was created
+   */
+  public long hits()
+  {
+    long n = 0L;
+    for(int i=0;i<STRIPES;i++) {
+      synchronized(stripes[i]) {
+        n += stripes[i].hits;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Gets the number of calls to intern() that did not find an equal pooled genome
+   *
+   * @return Number of misses since the pool was created
+   */
+  public long misses()
+  {
+    long n = 0L;
+    for(int i=0;i<STRIPES;i++) {
+      synchronized(stripes[i]) {
+        n += stripes[i].misses;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * <p>Gets the memory saved by sharing pooled genomes</p>
+   *
+   * <p>This is the size of every reference to a pooled genome after the
+   * first, i.e. the memory the duplicates would take if each user had its
+   * own copy.</p>
+   *
+   * @return Bytes saved
+   */
+  public long savedBytes()
+  {
+    long n = 0L;
+    for(int i=0;i<STRIPES;i++) {
+      synchronized(stripes[i]) {
+        n += stripes[i].savedBytes;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Internal method to double the number of buckets in a stripe
+   *
+   * @param s Stripe (must be locked)
+   * @return New buckets
+   */
+  private static Entry[] grow(Stripe s)
+  {
+    Entry[] old = s.buckets;
+    Entry[] b = new Entry[old.length * 2];
+    for(int i=0;i<old.length;i++) {
+      Entry e = old[i];
+      while (e != null) {
+        Entry next = e.next;
+        int n = bucket(e.hash,b);
+        e.next = b[n];
+        b[n] = e;
+        e = next;
+      }
+    }
+    s.buckets = b;
+    return b;
+  }
+
+  /**
+   * <p>Internal method to get the bucket for a checksum</p>
+   *
+   * <p>Stripes are chosen by the low bits of the checksum and buckets by
+   * the high bits, which are independent for a well mixed checksum.</p>
+   *
+   * @param h 64-bit checksum
+   * @param b Buckets
+   * @return Bucket index
+   */
+  private static int bucket(long h,Entry[] b)
+  {
+    return ((int)(h >>> 32) & (b.length - 1));
+  }
+}
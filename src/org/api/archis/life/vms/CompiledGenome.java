@@ -0,0 +1,246 @@
+package org.api.archis.life.vms;
+
+import org.api.archis.*;
+import org.api.archis.life.*;
+import org.api.archis.universe.*;
+import org.api.archis.utils.*;
+
+/**
+ * <p>Base class for register machine genomes compiled to JVM bytecode</p>
+ *
+ * <p>GenomeCompiler generates a subclass of this for a single genome whose
+ * execute() method is that genome's program as straight-line bytecode.
+ * The generated code calls the helper methods here for anything that is
+ * more than a few instructions long, which keeps generated methods small
+ * enough for HotSpot to compile.  The helpers implement exactly the same
+ * semantics as the RegisterMachineGenome interpreter.  Like the decoded
+ * interpreter, generated code charges for instructions in batches: it
+ * adds up each straight-line block's instructions on entry and only calls
+ * charge() when the block might starve the cell or overflow, before
+ * input or output, and at the end.</p>
+ *
+ * <p>Generated classes are defined in their own class loader and are
+ * referenced only by the genome they were compiled from, so they are
+ * unloaded when that genome is garbage collected.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public abstract class CompiledGenome
+{
+  // Packed genome bits (for reading codons with negative pointers)
+  private int[] genomeBits;
+
+  // Size of genome in codons
+  private int genomeSize;
+
+  // Maximum number of instructions per execution
+  private int maxInstructions;
+
+  /**
+   * Constructor for generated subclasses
+   */
+  protected CompiledGenome()
+  {
+  }
+
+  /**
+   * Internal method to set the genome this was compiled from
+   *
+   * @param genomeBits Packed genome bits
+   * @param genomeSize Size of genome in codons
+   * @param maxInstructions Maximum number of instructions per execution
+   */
+  void init(int[] genomeBits,int genomeSize,int maxInstructions)
+  {
+    this.genomeBits = genomeBits;
+    this.genomeSize = genomeSize;
+    this.maxInstructions = maxInstructions;
+  }
+
+  /**
+   * Executes the compiled genome
+   *
+   * @param input Input channels or null for none
+   * @param output Universe to send output to or null for none
+   * @param cell Cell being executed or null to not charge energy
+   * @param memory Cell state memory
+   * @return Number of instructions executed
+   * @throws DeathException Cell died during execution
+   */
+  public abstract int execute(IntegerInput[] input,Universe output,Cell cell,int[] memory)
+    throws DeathException;
+
+  /**
+   * Charges for the instructions executed since the last charge
+   *
+   * @param cell Cell being executed or null
+   * @param charged Instructions already charged for
+   * @param ictr Instructions executed
+   * @return Instruction count that can be reached without starving or overflowing
+   * @throws DeathException Cell starved or exceeded the instruction limit
+   */
+  protected final int charge(Cell cell,int charged,int ictr)
+    throws DeathException
+  {
+    RegisterMachineGenome.chargeInstructions(cell,charged,ictr,maxInstructions);
+    return RegisterMachineGenome.instructionLimit(cell,ictr,maxInstructions);
+  }
+
+  /**
+   * Gets the instruction count that can be reached without starving or overflowing
+   *
+   * @param cell Cell being executed or null
+   * @param ictr Instructions executed and charged for
+   * @return Instruction count limit
+   */
+  protected final int limit(Cell cell,int ictr)
+  {
+    return RegisterMachineGenome.instructionLimit(cell,ictr,maxInstructions);
+  }
+
+  /**
+   * Gets this thread's cycle detector, reset for a new execution
+   *
+   * @param output Universe executing this genome or null if none
+   * @return Cycle detector or null if cycle detection is off
+   */
+  protected final Object cycleDetector(Universe output)
+  {
+    return RegisterMachineGenome.cycleDetector(output);
+  }
+
+  /**
+   * Checks for an endless loop after jumping back to a LOOP
+   *
+   * @param detector Cycle detector
+   * @param cell Cell being executed or null
+   * @param charged Instructions already charged for
+   * @param loop Ordinal of the LOOP jumped to
+   * @param a Accumulator
+   * @param p Pointer
+   * @param channel Channel
+   * @param stack Loop stack
+   * @param sp Loop stack pointer
+   * @param memory Cell state memory
+   * @throws DeathException Genome is in an endless loop
+   */
+  protected final void backJump(Object detector,Cell cell,int charged,int loop,int a,int p,int channel,int[] stack,int sp,int[] memory)
+    throws DeathException
+  {
+    if (((CycleDetector)detector).backJump(loop,a,p,channel,stack,sp,memory))
+      RegisterMachineGenome.nonTerminating(cell,charged,maxInstructions);
+  }
+
+  /**
+   * Tells the cycle detector (if any) about input or output
+   *
+   * @param detector Cycle detector or null
+   */
+  protected static final void inputOutput(Object detector)
+  {
+    if (detector != null)
+      ((CycleDetector)detector).inputOutput();
+  }
+
+  /**
+   * Reads the value at a pointer
+   *
+   * @param memory Cell state memory
+   * @param p Pointer (negative values read genome codons)
+   * @return Value
+   */
+  protected final int load(int[] memory,int p)
+  {
+    if (p >= 0) {
+      // Pointers >= 0 read memory locations
+      if (p < memory.length)
+        return memory[p];
+      return memory[p % memory.length];
+    }
+
+    // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+    int mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+    return (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & RegisterMachineGenome.TOP_6_INT_BITS;
+  }
+
+  /**
+   * Stores a value at a pointer (negative pointers are ignored)
+   *
+   * @param memory Cell state memory
+   * @param p Pointer
+   * @param a Value to store
+   */
+  protected static final void store(int[] memory,int p,int a)
+  {
+    if (p >= 0) {
+      if (p < memory.length)
+        memory[p] = a;
+      else memory[p % memory.length] = a;
+    }
+  }
+
+  /**
+   * Compares the accumulator with a value
+   *
+   * @param a Accumulator
+   * @param mv Value
+   * @return -1, 0, or 1 if a is less than, equal to, or greater than mv
+   */
+  protected static final int cmp(int a,int mv)
+  {
+    return ((a < mv) ? -1 : ((a == mv) ? 0 : 1));
+  }
+
+  /**
+   * Divides the accumulator by a value
+   *
+   * @param a Accumulator
+   * @param mv Value
+   * @return a / mv or 0 if mv is 0
+   */
+  protected static final int div(int a,int mv)
+  {
+    return ((mv == 0) ? 0 : (a / mv));
+  }
+
+  /**
+   * Reads from an input channel
+   *
+   * @param input Input channels or null
+   * @param channel Channel
+   * @return Value read or 0 if there is no input
+   */
+  protected static final int read(IntegerInput[] input,int channel)
+  {
+    return ((input == null) ? 0 : ((input[channel] == null) ? 0 : input[channel].read()));
+  }
+
+  /**
+   * Converts the accumulator to a channel number
+   *
+   * @param a Accumulator
+   * @return Channel
+   */
+  protected static final int channel(int a)
+  {
+    return ((a == -2147483648) ? 2147483647 : Math.abs(a)) % Archis.CHANNEL_COUNT;
+  }
+
+  /**
+   * Writes to an output channel
+   *
+   * @param output Universe or null
+   * @param cell Cell being executed
+   * @param channel Channel
+   * @param a Value to write
+   * @throws DeathException Cell died as a result of output
+   */
+  protected static final void write(Universe output,Cell cell,int channel,int a)
+    throws DeathException
+  {
+    if (output != null)
+      output.evaluateOutput(cell,channel,a);
+  }
+}
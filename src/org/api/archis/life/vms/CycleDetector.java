@@ -0,0 +1,139 @@
+package org.api.archis.life.vms;
+
+/**
+ * <p>Detects register machines caught in an endless loop</p>
+ *
+ * <p>Between input and output a register machine is deterministic, so if
+ * its whole state (accumulator, pointer, channel, position, loop stack,
+ * and memory) is ever the same at two points with no I/O in between, it
+ * will go around the same cycle until it starves or exceeds its
+ * instruction limit.  Backward jumps from REP to LOOP are the only way
+ * round a cycle, so the state is checked there using Brent's algorithm: a
+ * snapshot is compared against each following back jump and retaken
+ * after 1, 2, 4, 8, ... back jumps, which finds a cycle of any length
+ * within a few times that length.</p>
+ *
+ * <p>Callers only start checking once there have been WARMUP_BACK_JUMPS
+ * back jumps with no I/O (counting them in a local variable), since
+ * nearly all loops finish well before that and a loop that never finishes
+ * will go round millions of times.  After that, most checks are rejected
+ * by comparing a few registers.  Memory and the loop stack are only
+ * compared when those all match, and a run that keeps matching registers
+ * without repeating gives up checking after a while so that detection can
+ * never cost much.</p>
+ *
+ * <p>Each thread has one detector, reset at the start of each execution.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+final class CycleDetector
+{
+  // Back jumps with no I/O before callers start checking
+  static final int WARMUP_BACK_JUMPS = 1024;
+
+  // Full comparisons that can fail before giving up for this execution
+  private static final int MAX_NEAR_MISSES = 64;
+
+  // Is there a snapshot?
+  private boolean valid;
+
+  // Back jumps until the next snapshot, and back jumps since the last one
+  private int power,steps;
+
+  // Near misses so far this execution
+  private int nearMisses;
+
+  // Snapshot of state
+  private int position,a,p,channel,sp;
+  private int[] stack;
+  private int[] memory;
+
+  CycleDetector()
+  {
+    stack = new int[64];
+    memory = new int[0];
+    reset();
+  }
+
+  /**
+   * Resets for a new execution
+   */
+  void reset()
+  {
+    valid = false;
+    power = 1;
+    steps = 0;
+    nearMisses = 0;
+  }
+
+  /**
+   * Discards the snapshot after input or output
+   */
+  void inputOutput()
+  {
+    valid = false;
+    power = 1;
+    steps = 0;
+  }
+
+  /**
+   * <p>Checks the state of the machine after a back jump</p>
+   *
+   * @param position Position (or other identifier) of the LOOP jumped to
+   * @param a Accumulator
+   * @param p Pointer
+   * @param channel Channel
+   * @param stack Loop stack after popping the frame jumped to
+   * @param sp Loop stack pointer
+   * @param memory Cell state memory
+   * @return True if the machine is in an endless loop
+   */
+  boolean backJump(int position,int a,int p,int channel,int[] stack,int sp,int[] memory)
+  {
+    if (valid) {
+      if ((position == this.position)&&(a == this.a)&&(p == this.p)&&(channel == this.channel)&&(sp == this.sp)&&(nearMisses < MAX_NEAR_MISSES)) {
+        if (same(stack,this.stack,sp)&&same(memory,this.memory,memory.length))
+          return true;
+        ++nearMisses;
+      }
+      if (++steps < power)
+        return false;
+      power <<= 1;
+      steps = 0;
+    }
+
+    // Take a new snapshot
+    this.position = position;
+    this.a = a;
+    this.p = p;
+    this.channel = channel;
+    this.sp = sp;
+    if (this.stack.length < sp)
+      this.stack = new int[stack.length];
+    System.arraycopy(stack,0,this.stack,0,sp);
+    if (this.memory.length != memory.length)
+      this.memory = new int[memory.length];
+    System.arraycopy(memory,0,this.memory,0,memory.length);
+    valid = true;
+    return false;
+  }
+
+  /**
+   * Internal method to compare the first n elements of two arrays
+   *
+   * @param x First array
+   * @param y Second array
+   * @param n Number of elements
+   * @return True if equal
+   */
+  private static boolean same(int[] x,int[] y,int n)
+  {
+    for(int i=0;i<n;i++) {
+      if (x[i] != y[i])
+        return false;
+    }
+    return true;
+  }
+}
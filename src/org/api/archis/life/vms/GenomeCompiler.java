@@ -0,0 +1,915 @@
+package org.api.archis.life.vms;
+
+import java.util.*;
+import java.io.*;
+
+import org.api.archis.*;
+import org.api.archis.life.*;
+import org.api.archis.universe.*;
+import org.api.archis.utils.*;
+
+/**
+ * <p>Compiles register machine genomes to JVM bytecode</p>
+ *
+ * <p>Each genome becomes a subclass of CompiledGenome whose execute()
+ * method runs the genome's codons as straight-line bytecode, with
+ * branches for LOOP, REP, and STOP and a table switch for returning to a
+ * LOOP from its REP (which is also where CycleDetector is consulted once
+ * a loop has gone round many times).  Only codons that can actually be
+ * reached are emitted, so introns cost nothing.  The class file is
+ * written by hand (version 49, which needs no stack map frames) and
+ * defined in a class loader of its own so that it can be unloaded along
+ * with its genome.</p>
+ *
+ * <p>HotSpot will not compile methods longer than 8000 bytes of bytecode,
+ * so genomes whose code would be longer than that are not compiled (the
+ * interpreter is faster than interpreted bytecode).</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class GenomeCompiler
+{
+  /**
+   * Maximum size of a compiled execute() method in bytes of bytecode
+   */
+  public static final int MAX_CODE_SIZE = 8000;
+
+  // Names and descriptors used by generated code
+  private static final String SUPER_CLASS = "org/api/archis/life/vms/CompiledGenome";
+  private static final String EXECUTE_DESCRIPTOR = "([Lorg/api/archis/utils/IntegerInput;Lorg/api/archis/universe/Universe;Lorg/api/archis/life/Cell;[I)I";
+
+  // Local variable slots in execute()
+  private static final int L_INPUT = 1;
+  private static final int L_OUTPUT = 2;
+  private static final int L_CELL = 3;
+  private static final int L_MEMORY = 4;
+  private static final int L_A = 5;
+  private static final int L_P = 6;
+  private static final int L_CHANNEL = 7;
+  private static final int L_ICTR = 8;
+  private static final int L_MV = 9;
+  private static final int L_STACK = 10;
+  private static final int L_SP = 11;
+  private static final int L_CHARGED = 12;
+  private static final int L_LIMIT = 13;
+  private static final int L_DETECTOR = 14;
+  private static final int L_WARMUP = 15;
+  private static final int MAX_LOCALS = 16;
+
+  // Counter for unique class names
+  private static int classCounter = 0;
+
+  /**
+   * Class loader for a single generated class
+   */
+  private static class GenomeClassLoader extends ClassLoader
+  {
+    public GenomeClassLoader(ClassLoader parent)
+    {
+      super(parent);
+    }
+
+    public Class define(String name,byte[] b)
+    {
+      return defineClass(name,b,0,b.length);
+    }
+  }
+
+  //
+  // Constant pool and bytecode buffers for the class being generated
+  //
+  private ByteArrayOutputStream pool;
+  private DataOutputStream poolOut;
+  private HashMap constants;
+  private int poolCount;
+  private byte[] code;
+  private int pc;
+
+  // Label addresses (-1 until placed) and branches waiting for them:
+  // each fixup is {offset field address, instruction address, label, width}
+  private int[] labels;
+  private int nlabels;
+  private ArrayList fixups;
+
+  /**
+   * Internal constructor (use compile())
+   */
+  private GenomeCompiler()
+  {
+    pool = new ByteArrayOutputStream();
+    poolOut = new DataOutputStream(pool);
+    constants = new HashMap();
+    poolCount = 1;
+    code = new byte[1024];
+    pc = 0;
+    labels = new int[64];
+    nlabels = 0;
+    fixups = new ArrayList();
+  }
+
+  /**
+   * <p>Main method: run this class to check compiled genomes against the interpreters</p>
+   *
+   * <p>Random genomes and point mutants of them are each run with the same
+   * input, memory, and energy by the packed interpreter, the decoded
+   * interpreter, and compiled code.  Any difference in instructions
+   * executed, cause of death, remaining energy, memory, or output is
+   * reported, and the exit status is 1 if there were any.</p>
+   *
+   * <p>Memory is only compared when the cell survives.  The tiers that
+   * charge for instructions in batches find out that a cell dies at the
+   * start of the run of instructions it dies in, so they can leave its
+   * memory as it was a few instructions earlier, and a dead cell's memory
+   * is never used.</p>
+   *
+   * @param argv Number of genomes to check (default 3000) and random seed (default current time)
+   */
+  public static void main(String[] argv)
+  {
+    try {
+      int count = ((argv.length > 0) ? Integer.parseInt(argv[0]) : 3000);
+      long seed = ((argv.length > 1) ? Long.parseLong(argv[1]) : System.currentTimeMillis());
+      System.out.println("Checking GenomeCompiler against the interpreters ("+count+" genomes, seed "+seed+")...");
+      System.out.println();
+
+      // Every output goes to a recorder that hashes it, with no static so
+      // that output is the same every time
+      RandomSource randomSource = new MersenneTwisterRandomSource(seed);
+      Simulation sim = new Simulation(1,"GenomeCompilerCheck",new MersenneTwisterRandomSource(seed));
+      Universe universe = sim.universe();
+      universe.setStaticProbability(0.0F);
+      universe.setTierThresholds(0,0);
+      final long[] outputHash = new long[1];
+      IOHandler recorder = new IOHandler() {
+        public String getChannelDescription(int channel)
+        {
+          return null;
+        }
+
+        public void evaluateOutput(Cell l,int channel,int value)
+        {
+          outputHash[0] = (outputHash[0] * 1000003L) + (((long)channel << 32) ^ (long)value);
+        }
+      };
+      for(int c=0;c<Archis.CHANNEL_COUNT;c++)
+        universe.assignChannel(c,recorder);
+
+      // Every input channel reads the same repeating pattern, restarted
+      // for each run
+      final int[] inputCounter = new int[1];
+      IntegerInput[] input = new IntegerInput[Archis.CHANNEL_COUNT];
+      for(int i=0;i<input.length;i++) {
+        input[i] = new IntegerInput() {
+          public int read()
+          {
+            return ((inputCounter[0]++ % 7) - 3);
+          }
+        };
+      }
+
+      String[] names = { "Packed Interpreter","Decoded Interpreter","Compiled" };
+      String[] results = new String[3];
+      int[] initialMemory = new int[Archis.CELL_STATE_MEMORY_SIZE];
+      int checked = 0,mismatches = 0;
+      RegisterMachineGenome g = null;
+      for(int i=0;i<count;i++) {
+        // Three in four genomes are point mutants of the one before, so
+        // that genomes with working loops and genes are checked too
+        if ((g == null)||((i & 3) == 0))
+          g = new RegisterMachineGenome(randomSource,16 + (randomSource.randomPositiveInteger() % 240),8);
+        else g = (RegisterMachineGenome)g.pointMutation(randomSource);
+        if (!g.compile())
+          continue;
+        ++checked;
+
+        // Small memory values so that pointers often land in memory or
+        // the genome, and energy that sometimes runs out
+        for(int m=0;m<initialMemory.length;m++)
+          initialMemory[m] = (randomSource.randomPositiveInteger() % 96) - 32;
+        int energy = 1 + (randomSource.randomPositiveInteger() % 100000);
+
+        for(int t=0;t<3;t++) {
+          int[] memory = initialMemory.clone();
+          Cell cell = new Cell(sim,universe,null,energy,g);
+          inputCounter[0] = 0;
+          outputHash[0] = 0L;
+          String outcome,finalMemory;
+          try {
+            switch(t) {
+              case 0: outcome = "executed "+g.executePacked(input,universe,cell,memory); break;
+              case 1: outcome = "executed "+g.interpret(input,universe,cell,memory); break;
+              default: outcome = "executed "+g.execute(input,universe,cell,memory); break;
+            }
+            finalMemory = Integer.toHexString(Arrays.hashCode(memory));
+          } catch (DeathException e) {
+            outcome = "died ("+e.getMessage()+")";
+            finalMemory = "not compared";
+          } catch (RuntimeException e) {
+            outcome = e.toString();
+            finalMemory = "not compared";
+          }
+          results[t] = outcome+", energy "+cell.energy()+", output "+Long.toHexString(outputHash[0])+", memory "+finalMemory;
+        }
+
+        if ((!results[0].equals(results[1]))||(!results[0].equals(results[2]))) {
+          if (++mismatches <= 10) {
+            System.out.println("Mismatch for genome "+g.toString()+" (energy "+energy+"):");
+            for(int t=0;t<3;t++)
+              System.out.println("  "+names[t]+": "+results[t]);
+          }
+        }
+      }
+
+      sim.kill();
+      System.out.println((count - checked)+" genomes too large to compile, "+checked+" checked, "+mismatches+" mismatches");
+      System.exit((mismatches > 0) ? 1 : 0);
+    } catch (Throwable t) {
+      t.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * <p>Compiles a decoded genome</p>
+   *
+   * @param ops Execution opcodes (one per codon)
+   * @param jump Jump table (matching REP for each LOOP, next GO for each STOP)
+   * @param firstGo Position of first GO or ops.length if none
+   * @param genomeBits Packed genome bits
+   * @param maxInstructions Maximum number of instructions per execution
+   * @return Compiled genome or null if it would be too large to compile
+   * @throws IOException Error writing class file (should not happen)
+   * @throws ReflectiveOperationException Error instantiating the loaded class
+   */
+  static CompiledGenome compile(byte[] ops,int[] jump,int firstGo,int[] genomeBits,int maxInstructions)
+    throws IOException,ReflectiveOperationException
+  {
+    String name;
+    synchronized(GenomeCompiler.class) {
+      name = "org/api/archis/life/vms/GeneratedGenome"+(++classCounter);
+    }
+
+    byte[] classFile = new GenomeCompiler().generate(name,ops,jump,firstGo);
+    if (classFile == null)
+      return null;
+
+    GenomeClassLoader loader = new GenomeClassLoader(CompiledGenome.class.getClassLoader());
+    CompiledGenome c = (CompiledGenome)loader.define(name.replace('/','.'),classFile).getDeclaredConstructor().newInstance();
+    c.init(genomeBits,ops.length,maxInstructions);
+    return c;
+  }
+
+  /**
+   * Internal method to generate a class file
+   *
+   * @param name Internal name of class
+   * @param ops Execution opcodes
+   * @param jump Jump table
+   * @param firstGo Position of first GO
+   * @return Class file or null if execute() would be too large
+   * @throws IOException Should not happen
+   */
+  private byte[] generate(String name,byte[] ops,int[] jump,int firstGo)
+    throws IOException
+  {
+    int genomeSize = ops.length;
+
+    // Number LOOPs in order so REP can return to one through a switch
+    int[] loopOrdinal = new int[genomeSize];
+    int loops = 0;
+    for(int i=0;i<genomeSize;i++) {
+      if (ops[i] == 9) /* LOOP */
+        loopOrdinal[i] = loops++;
+    }
+    int[] loopPositions = new int[loops];
+    for(int i=0;i<genomeSize;i++) {
+      if (ops[i] == 9)
+        loopPositions[loopOrdinal[i]] = i;
+    }
+
+    boolean[] reachable = RegisterMachineGenome.reachableCodons(ops,jump,firstGo);
+
+    // Find where straight-line blocks start: the first codon, each LOOP
+    // (REP returns to it), branch targets, and codons after a branch or
+    // after input or output (which are charged for up front)
+    boolean[] leader = new boolean[genomeSize + 2];
+    if (firstGo < genomeSize)
+      leader[firstGo + 1] = true;
+    for(int i=0;i<genomeSize;i++) {
+      switch(ops[i]) {
+        case 9: /* LOOP */
+          leader[i] = true;
+          leader[i + 1] = true;
+          leader[jump[i] + 1] = true;
+          break;
+        case 18: /* STOP */
+          leader[i + 1] = true;
+          leader[jump[i] + 1] = true;
+          break;
+        case 12: /* READ */
+        case 13: /* REP */
+        case 19: /* WRITE */
+          leader[i + 1] = true;
+          break;
+      }
+    }
+
+    // Labels: one per codon position plus end and dispatch
+    int endLabel = genomeSize;
+    int dispatchLabel = genomeSize + 1;
+    for(int i=0;i<=(genomeSize+1);i++)
+      newLabel();
+
+    int charge = methodref(SUPER_CLASS,"charge","(Lorg/api/archis/life/Cell;II)I");
+    int inputOutput = methodref(SUPER_CLASS,"inputOutput","(Ljava/lang/Object;)V");
+    int limit = methodref(SUPER_CLASS,"limit","(Lorg/api/archis/life/Cell;I)I");
+
+    // Prologue: a = p = channel = ictr = mv = charged = 0,
+    // limit = limit(cell,0)
+    for(int l=L_A;l<=L_MV;l++) {
+      emit(0x03); /* iconst_0 */
+      emitLocal(0x36,l); /* istore */
+    }
+    emit(0x03);
+    emitLocal(0x36,L_CHARGED);
+    emitLimit(limit);
+    if (loops > 0) {
+      emitInt(loops);
+      emit(0xbc); /* newarray */
+      emit(10); /* T_INT */
+      emitLocal(0x3a,L_STACK); /* astore */
+      emit(0x03); /* iconst_0 */
+      emitLocal(0x36,L_SP); /* istore */
+
+      // detector = cycleDetector(output), warmup = WARMUP_BACK_JUMPS
+      emit(0x2a); /* aload_0 */
+      emitLocal(0x19,L_OUTPUT); /* aload */
+      emit(0xb6); /* invokevirtual */
+      emitShort(methodref(SUPER_CLASS,"cycleDetector","(Lorg/api/archis/universe/Universe;)Ljava/lang/Object;"));
+      emitLocal(0x3a,L_DETECTOR);
+      emitInt(CycleDetector.WARMUP_BACK_JUMPS);
+      emitLocal(0x36,L_WARMUP);
+    }
+    if ((firstGo >= genomeSize)||(!reachable[firstGo + 1]))
+      branch(0xa7,endLabel); /* goto */
+
+    int load = methodref(SUPER_CLASS,"load","([II)I");
+    int store = methodref(SUPER_CLASS,"store","([III)V");
+    int cmp = methodref(SUPER_CLASS,"cmp","(II)I");
+    int div = methodref(SUPER_CLASS,"div","(II)I");
+    int read = methodref(SUPER_CLASS,"read","([Lorg/api/archis/utils/IntegerInput;I)I");
+    int channel = methodref(SUPER_CLASS,"channel","(I)I");
+    int write = methodref(SUPER_CLASS,"write","(Lorg/api/archis/universe/Universe;Lorg/api/archis/life/Cell;II)V");
+
+    boolean usesDispatch = false;
+    for(int i=0;i<genomeSize;i++) {
+      if (!reachable[i])
+        continue;
+      place(i);
+
+      if (leader[i]) {
+        // Count the whole block and charge for everything so far if it
+        // might starve or overflow: ictr += n; if (ictr > limit) charge
+        int n = 1;
+        while (((i + n) < genomeSize)&&(!leader[i + n]))
+          ++n;
+        if (n > 32767)
+          return null;
+        emitIinc(L_ICTR,n);
+        emitLocal(0x15,L_ICTR);
+        emitLocal(0x15,L_LIMIT);
+        int counted = newLabel();
+        branch(0xa4,counted); /* if_icmple */
+        emitCharge(charge);
+        place(counted);
+      }
+
+      switch(ops[i]) {
+        case 0: /* ADD */
+        case 1: /* AND */
+        case 10: /* MUL */
+        case 11: /* OR */
+        case 20: /* XOR */
+          // a = a op load(memory,p)
+          emitLocal(0x15,L_A);
+          emitLoad(load);
+          switch(ops[i]) {
+            case 0: emit(0x60); break; /* iadd */
+            case 1: emit(0x7e); break; /* iand */
+            case 10: emit(0x68); break; /* imul */
+            case 11: emit(0x80); break; /* ior */
+            case 20: emit(0x82); break; /* ixor */
+          }
+          emitLocal(0x36,L_A);
+          break;
+        case 3: /* CMP */
+        case 5: /* DIV */
+          // a = cmp/div(a,load(memory,p))
+          emitLocal(0x15,L_A);
+          emitLoad(load);
+          emit(0xb8); /* invokestatic */
+          emitShort((ops[i] == 3) ? cmp : div);
+          emitLocal(0x36,L_A);
+          break;
+        case 2: /* BACK */
+          emitIinc(L_P,-1);
+          break;
+        case 4: /* DEC */
+          emitIinc(L_A,-1);
+          break;
+        case 6: /* FWD */
+          emitIinc(L_P,1);
+          break;
+        case 7: /* GO */
+          emitLocal(0x15,L_A);
+          emitLocal(0x36,L_P);
+          break;
+        case 8: /* INC */
+          emitIinc(L_A,1);
+          break;
+        case 9: /* LOOP */
+          // Skip past matching REP if a == 0, otherwise push this LOOP
+          emitLocal(0x15,L_A);
+          branch(0x99,((jump[i] + 1) >= genomeSize) ? endLabel : (jump[i] + 1)); /* ifeq */
+          emitLocal(0x19,L_STACK); /* aload */
+          emitLocal(0x15,L_SP);
+          emitInt(loopOrdinal[i]);
+          emit(0x4f); /* iastore */
+          emitIinc(L_SP,1);
+          break;
+        case 12: /* READ */
+          emitCharge(charge);
+          emitInputOutput(loops,inputOutput);
+          emitLocal(0x19,L_INPUT);
+          emitLocal(0x15,L_CHANNEL);
+          emit(0xb8);
+          emitShort(read);
+          emitLocal(0x36,L_A);
+          emitLimit(limit);
+          break;
+        case 13: /* REP */
+          if (loops > 0) {
+            // If anything is on the stack, pop it and return to that LOOP
+            // if a != 0
+            int next = ((i + 1) >= genomeSize) ? endLabel : (i + 1);
+            emitLocal(0x15,L_SP);
+            branch(0x9e,next); /* ifle */
+            emitIinc(L_SP,-1);
+            emitLocal(0x15,L_A);
+            branch(0x99,next); /* ifeq */
+            emitLocal(0x19,L_STACK);
+            emitLocal(0x15,L_SP);
+            emit(0x2e); /* iaload */
+            emitLocal(0x36,L_MV);
+            branch(0xa7,dispatchLabel);
+            usesDispatch = true;
+          }
+          break;
+        case 14: /* SCH */
+          emitLocal(0x15,L_A);
+          emit(0xb8);
+          emitShort(channel);
+          emitLocal(0x36,L_CHANNEL);
+          break;
+        case 15: /* SHL */
+        case 16: /* SHR */
+          emitLocal(0x15,L_A);
+          emit(0x04); /* iconst_1 */
+          emit((ops[i] == 15) ? 0x78 : 0x7a); /* ishl, ishr */
+          emitLocal(0x36,L_A);
+          break;
+        case 17: /* STA */
+          emitLocal(0x19,L_MEMORY);
+          emitLocal(0x15,L_P);
+          emitLocal(0x15,L_A);
+          emit(0xb8);
+          emitShort(store);
+          emit(0x03);
+          emitLocal(0x36,L_A);
+          break;
+        case 18: /* STOP */
+          // Zero state and skip the intron up to and including the next GO
+          emit(0x03);
+          emitLocal(0x36,L_A);
+          emit(0x03);
+          emitLocal(0x36,L_P);
+          emit(0x03);
+          emitLocal(0x36,L_CHANNEL);
+          branch(0xa7,((jump[i] + 1) >= genomeSize) ? endLabel : (jump[i] + 1));
+          break;
+        case 19: /* WRITE */
+          emitCharge(charge);
+          emitInputOutput(loops,inputOutput);
+          emitLocal(0x19,L_OUTPUT);
+          emitLocal(0x19,L_CELL);
+          emitLocal(0x15,L_CHANNEL);
+          emitLocal(0x15,L_A);
+          emit(0xb8);
+          emitShort(write);
+          emitLimit(limit);
+          break;
+      }
+
+      if (pc > MAX_CODE_SIZE)
+        return null;
+    }
+
+    // End: charge for the rest and return ictr
+    place(endLabel);
+    emitCharge(charge);
+    emitLocal(0x15,L_ICTR);
+    emit(0xac); /* ireturn */
+
+    // Dispatch: check for an endless loop once warmed up, then
+    // tableswitch on the ordinal of the LOOP to return to
+    if (usesDispatch) {
+      place(dispatchLabel);
+      int noDetector = newLabel();
+      emitIinc(L_WARMUP,-1);
+      emitLocal(0x15,L_WARMUP);
+      branch(0x9c,noDetector); /* ifge */
+      emitLocal(0x19,L_DETECTOR);
+      branch(0xc6,noDetector); /* ifnull */
+      emit(0x2a); /* aload_0 */
+      emitLocal(0x19,L_DETECTOR);
+      emitLocal(0x19,L_CELL);
+      emitLocal(0x15,L_CHARGED);
+      emitLocal(0x15,L_MV);
+      emitLocal(0x15,L_A);
+      emitLocal(0x15,L_P);
+      emitLocal(0x15,L_CHANNEL);
+      emitLocal(0x19,L_STACK);
+      emitLocal(0x15,L_SP);
+      emitLocal(0x19,L_MEMORY);
+      emit(0xb6); /* invokevirtual */
+      emitShort(methodref(SUPER_CLASS,"backJump","(Ljava/lang/Object;Lorg/api/archis/life/Cell;IIIII[II[I)V"));
+      place(noDetector);
+      emitLocal(0x15,L_MV);
+      int switchPc = pc;
+      emit(0xaa); /* tableswitch */
+      while ((pc % 4) != 0)
+        emit(0);
+      switchBranch(switchPc,endLabel);
+      emitWord(0);
+      emitWord(loops - 1);
+      for(int k=0;k<loops;k++)
+        switchBranch(switchPc,reachable[loopPositions[k]] ? loopPositions[k] : endLabel);
+    }
+
+    if (pc > MAX_CODE_SIZE)
+      return null;
+    resolve();
+
+    // Assemble class file
+    int thisClass = classref(name);
+    int superClass = classref(SUPER_CLASS);
+    int superInit = methodref(SUPER_CLASS,"<init>","()V");
+    int initName = utf8("<init>");
+    int initDesc = utf8("()V");
+    int executeName = utf8("execute");
+    int executeDesc = utf8(EXECUTE_DESCRIPTOR);
+    int codeName = utf8("Code");
+
+    ByteArrayOutputStream cf = new ByteArrayOutputStream(pc + 1024);
+    DataOutputStream out = new DataOutputStream(cf);
+    out.writeInt(0xcafebabe);
+    out.writeShort(0); /* minor version */
+    out.writeShort(49); /* major version (Java 5, no stack maps) */
+    out.writeShort(poolCount);
+    poolOut.flush();
+    pool.writeTo(out);
+    out.writeShort(0x0031); /* ACC_PUBLIC | ACC_FINAL | ACC_SUPER */
+    out.writeShort(thisClass);
+    out.writeShort(superClass);
+    out.writeShort(0); /* interfaces */
+    out.writeShort(0); /* fields */
+    out.writeShort(2); /* methods */
+
+    // Constructor: super()
+    out.writeShort(0x0001); /* ACC_PUBLIC */
+    out.writeShort(initName);
+    out.writeShort(initDesc);
+    out.writeShort(1);
+    out.writeShort(codeName);
+    out.writeInt(12 + 5);
+    out.writeShort(1); /* max_stack */
+    out.writeShort(1); /* max_locals */
+    out.writeInt(5);
+    out.writeByte(0x2a); /* aload_0 */
+    out.writeByte(0xb7); /* invokespecial */
+    out.writeShort(superInit);
+    out.writeByte(0xb1); /* return */
+    out.writeShort(0); /* exception table */
+    out.writeShort(0); /* attributes */
+
+    // execute()
+    out.writeShort(0x0011); /* ACC_PUBLIC | ACC_FINAL */
+    out.writeShort(executeName);
+    out.writeShort(executeDesc);
+    out.writeShort(1);
+    out.writeShort(codeName);
+    out.writeInt(12 + pc);
+    out.writeShort(11); /* max_stack */
+    out.writeShort(MAX_LOCALS);
+    out.writeInt(pc);
+    out.write(code,0,pc);
+    out.writeShort(0);
+    out.writeShort(0);
+
+    out.writeShort(0); /* class attributes */
+    out.flush();
+    return cf.toByteArray();
+  }
+
+  //
+  // Bytecode emission
+  //
+
+  private void emit(int b)
+  {
+    if (pc >= code.length) {
+      byte[] tmp = new byte[code.length * 2];
+      System.arraycopy(code,0,tmp,0,pc);
+      code = tmp;
+    }
+    code[pc++] = (byte)b;
+  }
+
+  private void emitShort(int s)
+  {
+    emit(s >> 8);
+    emit(s);
+  }
+
+  private void emitWord(int w)
+  {
+    emit(w >> 24);
+    emit(w >> 16);
+    emit(w >> 8);
+    emit(w);
+  }
+
+  /**
+   * Internal method to emit an instruction on a local variable, using the
+   * one-byte forms for slots 0 to 3
+   *
+   * @param opcode Opcode (iload 0x15, aload 0x19, istore 0x36, astore 0x3a)
+   * @param slot Local variable slot
+   */
+  private void emitLocal(int opcode,int slot)
+  {
+    if (slot <= 3) {
+      switch(opcode) {
+        case 0x15: emit(0x1a + slot); return;
+        case 0x19: emit(0x2a + slot); return;
+        case 0x36: emit(0x3b + slot); return;
+        case 0x3a: emit(0x4b + slot); return;
+      }
+    }
+    emit(opcode);
+    emit(slot);
+  }
+
+  private void emitIinc(int slot,int amount)
+  {
+    if ((amount >= -128)&&(amount <= 127)) {
+      emit(0x84); /* iinc */
+      emit(slot);
+      emit(amount);
+    } else {
+      emit(0xc4); /* wide */
+      emit(0x84);
+      emitShort(slot);
+      emitShort(amount);
+    }
+  }
+
+  /**
+   * Internal method to emit limit = charge(cell,charged,ictr) and
+   * charged = ictr
+   *
+   * @param charge Methodref for charge()
+   */
+  private void emitCharge(int charge)
+  {
+    emit(0x2a); /* aload_0 */
+    emitLocal(0x19,L_CELL);
+    emitLocal(0x15,L_CHARGED);
+    emitLocal(0x15,L_ICTR);
+    emit(0xb6); /* invokevirtual */
+    emitShort(charge);
+    emitLocal(0x36,L_LIMIT);
+    emitLocal(0x15,L_ICTR);
+    emitLocal(0x36,L_CHARGED);
+  }
+
+  /**
+   * Internal method to emit inputOutput(detector) and reset the warmup
+   * count if there are any LOOPs
+   *
+   * @param loops Number of LOOPs in genome (no detector if none)
+   * @param inputOutput Methodref for inputOutput()
+   */
+  private void emitInputOutput(int loops,int inputOutput)
+  {
+    if (loops > 0) {
+      emitLocal(0x19,L_DETECTOR);
+      emit(0xb8); /* invokestatic */
+      emitShort(inputOutput);
+      emitInt(CycleDetector.WARMUP_BACK_JUMPS);
+      emitLocal(0x36,L_WARMUP);
+    }
+  }
+
+  /**
+   * Internal method to emit limit = limit(cell,ictr)
+   *
+   * @param limit Methodref for limit()
+   */
+  private void emitLimit(int limit)
+  {
+    emit(0x2a); /* aload_0 */
+    emitLocal(0x19,L_CELL);
+    emitLocal(0x15,L_ICTR);
+    emit(0xb6); /* invokevirtual */
+    emitShort(limit);
+    emitLocal(0x36,L_LIMIT);
+  }
+
+  /**
+   * Internal method to push an int constant
+   *
+   * @param v Value
+   */
+  private void emitInt(int v)
+  {
+    if ((v >= -1)&&(v <= 5))
+      emit(0x03 + v); /* iconst_<v> */
+    else if ((v >= -128)&&(v <= 127)) {
+      emit(0x10); /* bipush */
+      emit(v);
+    } else if ((v >= -32768)&&(v <= 32767)) {
+      emit(0x11); /* sipush */
+      emitShort(v);
+    } else {
+      int c = integer(v);
+      emit(0x13); /* ldc_w */
+      emitShort(c);
+    }
+  }
+
+  /**
+   * Internal method to emit load(memory,p) with this already pushed
+   * below the accumulator
+   *
+   * @param load Methodref for load()
+   */
+  private void emitLoad(int load)
+  {
+    emit(0x2a); /* aload_0 */
+    emitLocal(0x19,L_MEMORY);
+    emitLocal(0x15,L_P);
+    emit(0xb6); /* invokevirtual */
+    emitShort(load);
+  }
+
+  //
+  // Labels and branches
+  //
+
+  private int newLabel()
+  {
+    if (nlabels >= labels.length) {
+      int[] tmp = new int[labels.length * 2];
+      System.arraycopy(labels,0,tmp,0,nlabels);
+      labels = tmp;
+    }
+    labels[nlabels] = -1;
+    return nlabels++;
+  }
+
+  private void place(int label)
+  {
+    labels[label] = pc;
+  }
+
+  /**
+   * Internal method to emit a branch instruction with a 16-bit offset
+   *
+   * @param opcode Branch opcode
+   * @param label Target label
+   */
+  private void branch(int opcode,int label)
+  {
+    int at = pc;
+    emit(opcode);
+    fixups.add(new int[] { pc,at,label,2 });
+    emitShort(0);
+  }
+
+  /**
+   * Internal method to emit a 32-bit tableswitch offset
+   *
+   * @param switchPc Address of tableswitch instruction
+   * @param label Target label
+   */
+  private void switchBranch(int switchPc,int label)
+  {
+    fixups.add(new int[] { pc,switchPc,label,4 });
+    emitWord(0);
+  }
+
+  /**
+   * Internal method to fill in branch offsets once all labels are placed
+   */
+  private void resolve()
+  {
+    for(int i=0;i<fixups.size();i++) {
+      int[] f = (int[])fixups.get(i);
+      int offset = labels[f[2]] - f[1];
+      if (f[3] == 2) {
+        code[f[0]] = (byte)(offset >> 8);
+        code[f[0]+1] = (byte)offset;
+      } else {
+        code[f[0]] = (byte)(offset >> 24);
+        code[f[0]+1] = (byte)(offset >> 16);
+        code[f[0]+2] = (byte)(offset >> 8);
+        code[f[0]+3] = (byte)offset;
+      }
+    }
+  }
+
+  //
+  // Constant pool
+  //
+
+  private int utf8(String s)
+    throws IOException
+  {
+    String key = "U"+s;
+    Integer idx = (Integer)constants.get(key);
+    if (idx == null) {
+      poolOut.writeByte(1); /* CONSTANT_Utf8 */
+      poolOut.writeUTF(s);
+      idx = Integer.valueOf(poolCount++);
+      constants.put(key,idx);
+    }
+    return idx.intValue();
+  }
+
+  private int integer(int v)
+  {
+    String key = "I"+v;
+    Integer idx = (Integer)constants.get(key);
+    if (idx == null) {
+      try {
+        poolOut.writeByte(3); /* CONSTANT_Integer */
+        poolOut.writeInt(v);
+      } catch (IOException e) {
+        // Cannot happen writing to a byte array
+      }
+      idx = Integer.valueOf(poolCount++);
+      constants.put(key,idx);
+    }
+    return idx.intValue();
+  }
+
+  private int classref(String name)
+    throws IOException
+  {
+    String key = "C"+name;
+    Integer idx = (Integer)constants.get(key);
+    if (idx == null) {
+      int n = utf8(name);
+      poolOut.writeByte(7); /* CONSTANT_Class */
+      poolOut.writeShort(n);
+      idx = Integer.valueOf(poolCount++);
+      constants.put(key,idx);
+    }
+    return idx.intValue();
+  }
+
+  private int methodref(String owner,String name,String descriptor)
+    throws IOException
+  {
+    String key = "M"+owner+"."+name+descriptor;
+    Integer idx = (Integer)constants.get(key);
+    if (idx == null) {
+      int c = classref(owner);
+      int n = utf8(name);
+      int d = utf8(descriptor);
+      poolOut.writeByte(12); /* CONSTANT_NameAndType */
+      poolOut.writeShort(n);
+      poolOut.writeShort(d);
+      int nt = poolCount++;
+      poolOut.writeByte(10); /* CONSTANT_Methodref */
+      poolOut.writeShort(c);
+      poolOut.writeShort(nt);
+      idx = Integer.valueOf(poolCount++);
+      constants.put(key,idx);
+    }
+    return idx.intValue();
+  }
+}
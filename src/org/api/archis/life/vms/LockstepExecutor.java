@@ -0,0 +1,236 @@
+package org.api.archis.life.vms;
+
+import java.util.*;
+
+import org.api.archis.life.*;
+import org.api.archis.universe.*;
+
+/**
+ * <p>Executes cells that share a register machine genome in lockstep</p>
+ *
+ * <p>Before a range of cells is executed, prepare() groups the cells in it
+ * whose genomes can be run in lockstep (see
+ * RegisterMachineGenome.lockstepCandidate()) by canonical genome object,
+ * and runs each group large enough to be worth it through
+ * RegisterMachineGenome.executeLockstep() on copies of their memories.
+ * Then, as each cell's turn comes, heartbeat() hands its result to
+ * Cell.heartbeat(int[],int[],int), which only uses it if the cell's
+ * memory has not changed in the meantime.  Cells that dropped out of
+ * lockstep or whose memory changed are run on their own, so every cell
+ * ends up exactly as if it had been executed by itself.</p>
+ *
+ * <p>Each executing thread needs its own executor.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public final class LockstepExecutor
+{
+  /**
+   * Minimum number of cells sharing a genome to run them in lockstep
+   */
+  public static final int MIN_LANES = 32;
+
+  // Maximum instructions to run in lockstep (cells whose genomes run
+  // longer are run on their own)
+  private static final int MAX_INSTRUCTIONS = 65536;
+
+  // Groups: genome -> group number, and each group's genome, size and
+  // offset in members
+  private IdentityHashMap groups;
+  private RegisterMachineGenome[] groupGenome;
+  private int[] groupSize;
+  private int[] groupOffset;
+
+  // Group of each cell in the range (-1 if none), and cells of each group
+  private int[] groupOf;
+  private int[] members;
+
+  // Result row of each cell in the range (-1 if none)
+  private int[] row;
+  private int start;
+
+  // Results: memory before and after and instructions (-1 if dropped)
+  private int[][] before;
+  private int[][] after;
+  private int[] instructions;
+
+  // Universe the cells are executed in
+  private Universe universe;
+
+  // Scratch arrays for executeLockstep()
+  private int[][] lanes;
+  private int[] id;
+  private int[] laneInstructions;
+
+  /**
+   * Constructs a new lockstep executor
+   *
+   * @param universe Universe the cells are executed in
+   */
+  public LockstepExecutor(Universe universe)
+  {
+    this.universe = universe;
+    groups = new IdentityHashMap();
+    groupGenome = new RegisterMachineGenome[16];
+    groupSize = new int[16];
+    groupOffset = new int[16];
+    groupOf = new int[0];
+    members = new int[0];
+    row = new int[0];
+    before = new int[0][];
+    after = new int[0][];
+    instructions = new int[0];
+    lanes = new int[0][];
+    id = new int[0];
+    laneInstructions = new int[0];
+  }
+
+  /**
+   * <p>Executes in lockstep the cells in a range that can be</p>
+   *
+   * <p>This does not change any cell.  Results are kept until the next
+   * call to prepare().</p>
+   *
+   * @param cells Population store
+   * @param start Start index
+   * @param end End index (exclusive)
+   */
+  public void prepare(Population cells,int start,int end)
+  {
+    int count = end - start;
+    this.start = start;
+    if (row.length < count) {
+      groupOf = new int[count];
+      members = new int[count];
+      row = new int[count];
+    }
+
+    // Find cells whose genomes can run in lockstep and group them
+    int ngroups = 0;
+    groups.clear();
+    for(int i=0;i<count;i++) {
+      row[i] = -1;
+      groupOf[i] = -1;
+      Cell c = cells.cell(start + i);
+      if (c.alive()&&(!c.idle())) {
+        Genome g = c.genome();
+        if ((g instanceof RegisterMachineGenome)&&((RegisterMachineGenome)g).lockstepCandidate()) {
+          Integer n = (Integer)groups.get(g);
+          if (n == null) {
+            if (ngroups >= groupGenome.length) {
+              RegisterMachineGenome[] ng = new RegisterMachineGenome[ngroups * 2];
+              System.arraycopy(groupGenome,0,ng,0,ngroups);
+              groupGenome = ng;
+              groupSize = new int[ngroups * 2];
+              groupOffset = new int[ngroups * 2];
+            }
+            n = Integer.valueOf(ngroups);
+            groups.put(g,n);
+            groupGenome[ngroups++] = (RegisterMachineGenome)g;
+          }
+          groupOf[i] = n.intValue();
+        }
+      }
+    }
+    if (ngroups == 0)
+      return;
+
+    // List the members of each group together, in order
+    for(int g=0;g<ngroups;g++)
+      groupSize[g] = 0;
+    for(int i=0;i<count;i++) {
+      if (groupOf[i] >= 0)
+        ++groupSize[groupOf[i]];
+    }
+    int total = 0;
+    for(int g=0;g<ngroups;g++) {
+      groupOffset[g] = total;
+      total += groupSize[g];
+    }
+    for(int i=0;i<count;i++) {
+      if (groupOf[i] >= 0)
+        members[groupOffset[groupOf[i]]++] = i;
+    }
+
+    // Run each large enough group, with enough instructions for the cell
+    // with the most energy
+    int rows = 0;
+    for(int g=0,m=0;g<ngroups;m+=groupSize[g++]) {
+      int size = groupSize[g];
+      if (size < MIN_LANES)
+        continue;
+      ensureRows(rows + size);
+      int budget = 0;
+      for(int k=0;k<size;k++) {
+        int r = rows + k;
+        Cell c = cells.cell(start + members[m + k]);
+        int[] mem = c.stateMemory();
+        if ((before[r] == null)||(before[r].length != mem.length)) {
+          before[r] = new int[mem.length];
+          after[r] = new int[mem.length];
+        }
+        System.arraycopy(mem,0,before[r],0,mem.length);
+        System.arraycopy(mem,0,after[r],0,mem.length);
+        lanes[k] = after[r];
+        if (c.spendableEnergy() >= budget)
+          budget = c.spendableEnergy() + 1;
+        row[members[m + k]] = r;
+      }
+
+      int finished = groupGenome[g].executeLockstep(lanes,id,size,laneInstructions,((budget < MAX_INSTRUCTIONS) ? budget : MAX_INSTRUCTIONS));
+      long n = 0L;
+      for(int k=0;k<size;k++) {
+        instructions[rows + k] = laneInstructions[k];
+        if (laneInstructions[k] > 0)
+          n += (long)laneInstructions[k];
+      }
+      if (finished > 0)
+        groupGenome[g].countLockstep(finished,n,universe);
+      rows += size;
+    }
+  }
+
+  /**
+   * <p>Does a cell's heartbeat with its lockstep result if it has one</p>
+   *
+   * @param cell Cell
+   * @param index Index of cell in the population store (within the range given to prepare())
+   * @return True if the heartbeat was done, false if the cell must be run on its own
+   * @throws DeathException Death occurred for some reason
+   */
+  public boolean heartbeat(Cell cell,int index)
+    throws DeathException
+  {
+    int r = row[index - start];
+    if ((r < 0)||(instructions[r] < 0))
+      return false;
+    return cell.heartbeat(before[r],after[r],instructions[r]);
+  }
+
+  /**
+   * Internal method to make sure there is room for a number of result rows
+   *
+   * @param n Number of rows
+   */
+  private void ensureRows(int n)
+  {
+    if (before.length < n) {
+      int[][] nb = new int[n * 2][];
+      int[][] na = new int[n * 2][];
+      int[] ni = new int[n * 2];
+      System.arraycopy(before,0,nb,0,before.length);
+      System.arraycopy(after,0,na,0,after.length);
+      System.arraycopy(instructions,0,ni,0,instructions.length);
+      before = nb;
+      after = na;
+      instructions = ni;
+    }
+    if (lanes.length < n) {
+      lanes = new int[n][];
+      id = new int[n];
+      laneInstructions = new int[n];
+    }
+  }
+}
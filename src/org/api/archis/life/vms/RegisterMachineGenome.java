@@ -3,9 +3,9 @@ package org.api.archis.life.vms;
 import java.util.*;
 import java.math.*;
 import java.io.*;
-import java.lang.ref.*;
 import java.text.NumberFormat;
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.api.archis.*;
 import org.api.archis.life.*;
@@ -36,8 +36,8 @@ import org.api.archis.utils.*;
  * <p>
  * There is a limit to how many instructions will be executed in a single tick,
  * and any exceeding of this limit will cause a DeathException to be thrown.
- * This also occurs if the loop/rep tracking stack is overflowed, which
- * indicates a certain kind of nested infinite loop.  The per-tick limit is
+ * The loop/rep tracking stack is sized from the number of LOOPs in the
+ * genome, which bounds how many loops can be open at once.  The per-tick limit is
  * (genomeSize^2 * (loops+1)) where genomeSize is the size of the genome in
  * codons and loops is the number of LOOP instructions in the genome.
  * </p>
@@ -77,7 +77,7 @@ public class RegisterMachineGenome implements Genome
 {
   // Initialize some static internal stuff
   private static int[] BITS,NOTBITS;
-  private static DeathException instructionOverflowException;
+  static DeathException instructionOverflowException;
   static
   {
     BITS = new int[32];
@@ -271,12 +271,26 @@ public class RegisterMachineGenome implements Genome
   // Top 6 bits of int
   public static final int TOP_6_INT_BITS = 0x3f;
 
+  //
+  // Execution tiers: genomes start out run by the interpreter straight
+  // from their packed bits, are decoded once they have run often enough
+  // to repay decoding, and are compiled to bytecode once they are hot
+  //
+  public static final int TIER_PACKED = 0;
+  public static final int TIER_DECODED = 1;
+  public static final int TIER_COMPILED = 2;
+  public static final int TIER_COUNT = 3;
+
+  // Default executions after which a genome is decoded or compiled
+  public static final int DEFAULT_DECODE_THRESHOLD = 4;
+  public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
   // Map containing codon values by character meaning-- used by the synthetic
   // genome constructor.
   private static Map characterToCodeMap = null;
 
-  // Internal static WeakHashMap for canonicalization
-  private static WeakHashMap canonicalGenomes = null;
+  // Pool of canonical genomes
+  private static GenomePool canonicalGenomes = new GenomePool(GenomePool.DEFAULT_CAPACITY);
 
   /**
    * Stack for position state information (used for loop/rep handling)
@@ -288,11 +302,14 @@ public class RegisterMachineGenome implements Genome
   {
     public int[] stack;
     public int stackPtr;
+    public CycleDetector detector;
 
     public PositionInformationStack()
     {
-      stack = new int[262144];
+      // Grown as needed to fit the genomes executed on this thread
+      stack = new int[256];
       stackPtr = 0;
+      detector = new CycleDetector();
     }
   }
 
@@ -315,10 +332,338 @@ public class RegisterMachineGenome implements Genome
    */
   private static ThreadLocalPositionInformationStack threadLocalStack = new ThreadLocalPositionInformationStack();
 
+  /**
+   * <p>Decoded form of a genome used for execution</p>
+   *
+   * <p>This holds one execution opcode (the value from CODON_EXEC_MAPPING)
+   * per codon and precomputed jump targets so that skipping introns and
+   * false LOOPs takes constant time.  For each LOOP, jump is the index of
+   * its matching REP; for each STOP, it is the index of the next GO (the
+   * start codon of the next gene).  Either is genomeSize if there is no
+   * such codon.  Fields are final so a program can be shared between
+   * threads without locking.</p>
+   *
+   * <p>The decoded interpreter runs code rather than ops.  It is a copy of
+   * ops in which the first codon of each run of simple instructions that
+   * can be done in one step is replaced by a superinstruction, whose jump
+   * entry is the index of the run's last codon and whose arg is its
+   * operand:</p>
+   *
+   * <ul>
+   * <li>21 - INCs and DECs, adding arg to a</li>
+   * <li>22 - FWDs and BACKs, adding arg to p</li>
+   * <li>23 - arg SHLs</li>
+   * <li>24 - arg SHRs</li>
+   * <li>25 - FWDs and BACKs adding up to arg, STA, then FWDs and BACKs
+   *     adding up to -arg (storing at an offset from p, as in ff#bb)</li>
+   * </ul>
+   *
+   * <p>Nothing can jump into the middle of a run, since runs never contain
+   * LOOP, REP, GO or STOP.  The other codons of a run keep their ordinary
+   * opcodes, so a run that might starve the cell or exceed the instruction
+   * limit part way through can still be run one codon at a time.</p>
+   *
+   * @author Adam Ierymenko
+   * @version 1.0
+   */
+  private static final class Program
+  {
+    public final byte[] ops;
+    public final byte[] code;
+    public final int[] jump;
+    public final int[] arg;
+    public final int firstGo;
+    public final int maxLoopDepth;
+
+    public Program(byte[] ops)
+    {
+      this.ops = ops;
+      jump = new int[ops.length];
+
+      // Match LOOPs to REPs, and point each STOP at the following GO
+      int[] open = new int[ops.length];
+      int depth = 0;
+      int loops = 0;
+      int lastStop = -1;
+      int fg = ops.length;
+      for(int i=0;i<ops.length;i++) {
+        switch(ops[i]) {
+          case 7: /* GO */
+            if (fg == ops.length)
+              fg = i;
+            while (lastStop >= 0) {
+              int prev = jump[lastStop];
+              jump[lastStop] = i;
+              lastStop = prev;
+            }
+            break;
+          case 9: /* LOOP */
+            jump[i] = ops.length;
+            open[depth++] = i;
+            ++loops;
+            break;
+          case 13: /* REP */
+            if (depth > 0)
+              jump[open[--depth]] = i;
+            break;
+          case 18: /* STOP */
+            // Chain STOPs awaiting a GO through their jump entries
+            jump[i] = lastStop;
+            lastStop = i;
+            break;
+        }
+      }
+      while (lastStop >= 0) {
+        int prev = jump[lastStop];
+        jump[lastStop] = ops.length;
+        lastStop = prev;
+      }
+      firstGo = fg;
+
+      // Frames on the loop stack are always for LOOPs at increasing
+      // positions, so the stack can never hold more frames than there are
+      // LOOPs.  (Bracket nesting alone is not a bound, since REPs inside
+      // introns are skipped without popping.)
+      maxLoopDepth = loops;
+
+      // Fuse runs of simple instructions into superinstructions
+      code = ops.clone();
+      arg = new int[ops.length];
+      for(int i=0;i<ops.length;) {
+        int e = i + 1;
+        switch(ops[i]) {
+          case 4: /* DEC */
+          case 8: /* INC */
+            e = run(ops,i,8,4);
+            if ((e - i) > 1)
+              fuse(i,e,21,sum(ops,i,e,8));
+            break;
+          case 2: /* BACK */
+          case 6: /* FWD */
+            e = run(ops,i,6,2);
+            int k = sum(ops,i,e,6);
+            if ((e < ops.length)&&(ops[e] == 17)) { /* STA */
+              int e2 = run(ops,e+1,6,2);
+              if (sum(ops,e+1,e2,6) == -k) {
+                fuse(i,e = e2,25,k);
+                break;
+              }
+            }
+            if ((e - i) > 1)
+              fuse(i,e,22,k);
+            break;
+          case 15: /* SHL */
+          case 16: /* SHR */
+            e = run(ops,i,ops[i],ops[i]);
+            if ((e - i) > 1)
+              fuse(i,e,((ops[i] == 15) ? 23 : 24),e - i);
+            break;
+        }
+        i = e;
+      }
+    }
+
+    /**
+     * Internal method to make codons from start to end-1 a superinstruction
+     *
+     * @param start First codon
+     * @param end Codon after the last
+     * @param op Superinstruction opcode
+     * @param operand Superinstruction operand
+     */
+    private void fuse(int start,int end,int op,int operand)
+    {
+      code[start] = (byte)op;
+      jump[start] = end - 1;
+      arg[start] = operand;
+    }
+
+    /**
+     * Internal method to find the end of a run of either of two opcodes
+     *
+     * @param ops Execution opcodes
+     * @param start First codon of run
+     * @param x First opcode
+     * @param y Second opcode
+     * @return Index of first codon after the run
+     */
+    private static int run(byte[] ops,int start,int x,int y)
+    {
+      while ((start < ops.length)&&((ops[start] == x)||(ops[start] == y)))
+        ++start;
+      return start;
+    }
+
+    /**
+     * Internal method to add up a run, counting one opcode as 1 and the
+     * other as -1
+     *
+     * @param ops Execution opcodes
+     * @param start First codon of run
+     * @param end Codon after the last
+     * @param up Opcode counted as 1
+     * @return Sum
+     */
+    private static int sum(byte[] ops,int start,int end,int up)
+    {
+      int n = 0;
+      for(int i=start;i<end;i++)
+        n += ((ops[i] == up) ? 1 : -1);
+      return n;
+    }
+  }
+
+  // Default tier thresholds (see setTierThresholds())
+  private static volatile int decodeThreshold = DEFAULT_DECODE_THRESHOLD;
+  private static volatile int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+
+  // Detect endless loops in the decoded and compiled tiers by default?
+  private static volatile boolean cycleDetection = true;
+
+  // Genomes of more than CHUNK_WORDS words are point mutated by copying
+  // only the chunk containing the mutation (see pointMutation())
+  private static final int CHUNK_SHIFT = 8;
+  private static final int CHUNK_WORDS = (1 << CHUNK_SHIFT);
+
+  // Number of genomes whose bytecode failed to generate, load, or verify
+  private static AtomicLong compileFailures = new AtomicLong(0L);
+
+  // Scratch bit fields of child builders, reused once their child is built
+  private static IntArrayPool childBits = new IntArrayPool(256);
+
+  /**
+   * <p>Builds a child genome, recognizing an exact copy of its parent</p>
+   *
+   * <p>While the codons appended match the parent's, nothing is stored.
+   * At the first difference the matching prefix is copied from the
+   * parent's bit field, and from then on codons are packed straight into
+   * a scratch bit field from a pool that is given back once the child
+   * is built.  A child that turns out to be an exact copy
+   * of a canonical parent just takes another reference to the parent's
+   * genome.  Otherwise the genome built is the same as one made from the
+   * same codons by the byte array constructor.</p>
+   *
+   * @author Adam Ierymenko
+   * @version 1.0
+   */
+  private static final class ChildBuilder implements GenomeBuilder
+  {
+    private RegisterMachineGenome parent;
+    private int[] parentBits;
+    private int parentSize;
+
+    // Bit field of child (null while it matches the parent)
+    private int[] bits;
+
+    // Codons appended, and word and shift of the next codon
+    private int size;
+    private int word;
+    private int shift;
+
+    public ChildBuilder(RegisterMachineGenome parent)
+    {
+      this.parent = parent;
+      parentBits = parent.bits();
+      parentSize = parent.genomeSize;
+      size = 0;
+      word = 0;
+      shift = 24;
+    }
+
+    public void append(int value)
+    {
+      int codon = value & CODON_VALUE_MAX;
+      if (bits == null) {
+        if ((size < parentSize)&&(((parentBits[word] >> shift) & TOP_6_INT_BITS) == codon)) {
+          next();
+          return;
+        }
+        diverge();
+      }
+      if (word >= bits.length) {
+        int[] nb = childBits.get(bits.length * 2);
+        System.arraycopy(bits,0,nb,0,bits.length);
+        Arrays.fill(nb,bits.length,nb.length,0);
+        childBits.recycle(bits);
+        bits = nb;
+      }
+      bits[word] |= codon << shift;
+      next();
+    }
+
+    public int size()
+    {
+      return size;
+    }
+
+    public Genome build()
+    {
+      // Random genomes can have nonzero bits after their last codon, so
+      // they are not equal to a copy of themselves
+      if (bits == null) {
+        if ((size == parentSize)&&((shift == 24)||((parentBits[word] & ((1 << (shift + 6)) - 1)) == 0))&&canonicalGenomes.acquire(parent))
+          return parent;
+        diverge();
+      }
+
+      RegisterMachineGenome g = new RegisterMachineGenome();
+      g.genomeSize = size;
+      int[] gbits = new int[(size + 4) / 5];
+      System.arraycopy(bits,0,gbits,0,gbits.length);
+      g.genomeBits = gbits;
+      childBits.recycle(bits);
+      bits = null;
+
+      // Same as the byte array constructor
+      int loops = 0;
+      for(int i=0,w=0,sh=24;i<size;i++) {
+        if (CODON_CHAR_MAPPING[(gbits[w] >> sh) & TOP_6_INT_BITS] == CODON_LOOP)
+          ++loops;
+        if ((sh -= 6) < 0) {
+          sh = 24;
+          ++w;
+        }
+      }
+      g.maxInstructions = ((loops > 1) ? (size * size * (loops+1)) : (size * size * 3));
+      return g.canonicalize();
+    }
+
+    /**
+     * Internal method to move on to the next codon
+     */
+    private void next()
+    {
+      ++size;
+      if ((shift -= 6) < 0) {
+        shift = 24;
+        ++word;
+      }
+    }
+
+    /**
+     * Internal method to start a bit field of its own with the codons so far
+     */
+    private void diverge()
+    {
+      bits = childBits.get(((word < parentBits.length) ? parentBits.length : (word + 1)) * 2);
+      System.arraycopy(parentBits,0,bits,0,word);
+
+      // Keep only the codons before this one from a partly matched word
+      // (pooled arrays are not cleared, so clear everything after it)
+      bits[word] = ((shift < 24) ? ((parentBits[word] >> (shift + 6)) << (shift + 6)) : 0);
+      Arrays.fill(bits,word + 1,bits.length,0);
+    }
+  }
+
   // -------------------------------------------------------------------------
 
-  // Integer array for bit field
-  private int[] genomeBits;
+  // Integer array for bit field (null for a point mutant of a large genome
+  // until it is canonicalized or executed, see bits())
+  private volatile int[] genomeBits;
+
+  // Bit field split into chunks of CHUNK_WORDS words, shared between large
+  // genomes and their point mutants (null until needed, see chunks())
+  private volatile int[][] chunks;
 
   // Size of genome in codons
   private int genomeSize;
@@ -326,8 +671,21 @@ public class RegisterMachineGenome implements Genome
   // Maximum number of instructions per execution
   private int maxInstructions;
 
-  // Hash code
-  private int hashCode;
+  // 64-bit hash (see checksum64()) or 0 if not computed yet (a hash that
+  // comes out to 0 is stored as 1)
+  private volatile long hash64;
+
+  // Decoded program (built on first execution, not serialized)
+  private Program program;
+
+  // Static analysis flags or -1 if not analyzed yet (not serialized)
+  private volatile int analysis = -1;
+
+  // Compiled form (null until compiled), whether compiling failed or the
+  // genome is too large, and number of executions before being compiled
+  private volatile CompiledGenome compiled;
+  private boolean compileFailed;
+  private int executions;
 
   //
   // Externalizable methods for networked object transfer
@@ -337,20 +695,22 @@ public class RegisterMachineGenome implements Genome
   {
     out.writeInt(maxInstructions);
     out.writeInt(genomeSize);
-    out.writeInt(genomeBits.length);
-    for(int i=0;i<genomeBits.length;i++)
-      out.writeInt(genomeBits[i]);
+    int[] bits = bits();
+    out.writeInt(bits.length);
+    for(int i=0;i<bits.length;i++)
+      out.writeInt(bits[i]);
   }
   public void readExternal(ObjectInput in)
     throws IOException, ClassNotFoundException
   {
-    hashCode = -1;
+    hash64 = 0L;
     maxInstructions = in.readInt();
     genomeSize = in.readInt();
     try {
-      genomeBits = new int[in.readInt()];
+      int[] genomeBits = new int[in.readInt()];
       for(int i=0;i<genomeBits.length;i++)
         genomeBits[i] = in.readInt();
+      this.genomeBits = genomeBits;
     } catch (IOException e) {
       throw e;
     } catch (Throwable t) {
@@ -361,7 +721,7 @@ public class RegisterMachineGenome implements Genome
   /**
    * Main method: run this class to benchmark it
    *
-   * @param argv Arguments (not used)
+   * @param argv Files containing genomes in character notation to benchmark too
    */
   public static void main(String[] argv)
   {
@@ -376,26 +736,129 @@ public class RegisterMachineGenome implements Genome
       IntegerInput[] noInput = new IntegerInput[0];
       int[] memory = new int[Archis.CELL_STATE_MEMORY_SIZE];
       RegisterMachineGenome test = new RegisterMachineGenome(new MersenneTwisterRandomSource(System.currentTimeMillis()),"ggggg?????>[[[{<}>[[[{<}>[[[{<}>[[[{<}>[[[{<}>[[[{<}>[[[[[[#+++++{<<}");
-      long ni = 0L;
-      for(int i=0;i<1000;i++)
+      for(int i=0;i<1000;i++) {
+        test.executePacked(noInput,null,null,memory);
+        test.interpret(noInput,null,null,memory);
+      }
+      if (!test.compile())
+        System.out.println("(Could not compile test genome)");
+      for(int i=0;i<20000;i++)
         test.execute(noInput,null,null,memory);
 
-      System.gc();
-
-      long start = System.currentTimeMillis();
-      for(int i=0;i<500000;i++)
-        ni += (long)test.execute(noInput,null,null,memory);
-      long end = System.currentTimeMillis();
-
       NumberFormat df = DecimalFormat.getNumberInstance();
       df.setMaximumFractionDigits(2);
       df.setMinimumFractionDigits(2);
       df.setMinimumIntegerDigits(1);
       df.setMaximumIntegerDigits(16384);
       df.setGroupingUsed(false);
-      System.out.println("Instructions Executed: "+ni);
-      System.out.println("Execution Time: "+df.format((double)(end-start) / 1000.0)+"sec");
-      System.out.println("Instructions/Second: "+df.format((double)ni / ((double)(end-start) / 1000.0)));
+
+      // Run the packed interpreter, the decoded one, and compiled code,
+      // first without a cell and then charging a cell for every
+      // instruction (the packed interpreter charges one at a time, the
+      // others in batches)
+      Simulation sim = new Simulation(1,"Benchmark",new MersenneTwisterRandomSource(0L));
+      Cell cell = new Cell(sim,null,null,1000000000,test);
+      String[] names = { "Packed Interpreter","Decoded Interpreter","Compiled" };
+      double[] ips = new double[6];
+      for(int t=0;t<6;t++) {
+        System.gc();
+
+        Cell c = ((t >= 3) ? cell : null);
+        long ni = 0L;
+        long start = System.currentTimeMillis();
+        for(int i=0;i<500000;i++) {
+          int n = 0;
+          switch(t % 3) {
+            case 0: n = test.executePacked(noInput,null,c,memory); break;
+            case 1: n = test.interpret(noInput,null,c,memory); break;
+            case 2: n = test.execute(noInput,null,c,memory); break;
+          }
+          if (c != null)
+            c.incEnergy(n);
+          ni += (long)n;
+        }
+        long end = System.currentTimeMillis();
+        ips[t] = (double)ni / ((double)((end > start) ? (end-start) : 1L) / 1000.0);
+
+        System.out.println(names[t % 3]+((c == null) ? ":" : " (charging energy):"));
+        System.out.println("  Instructions Executed: "+ni);
+        System.out.println("  Execution Time: "+df.format((double)(end-start) / 1000.0)+"sec");
+        System.out.println("  Instructions/Second: "+df.format(ips[t]));
+      }
+      System.out.println();
+      System.out.println("Decoded Speedup: "+df.format(ips[1] / ips[0])+"x");
+      System.out.println("Compiled Speedup: "+df.format(ips[2] / ips[0])+"x");
+      for(int t=0;t<3;t++)
+        System.out.println(names[t]+" Energy Charging Overhead: "+df.format(((ips[t] / ips[t+3]) - 1.0) * 100.0)+"%");
+
+      // Run the decoded and compiled tiers again without cycle detection
+      // (the test genome's loops all terminate, so this is pure overhead)
+      setCycleDetection(false);
+      for(int t=1;t<3;t++) {
+        System.gc();
+        long ni = 0L;
+        long start = System.currentTimeMillis();
+        for(int i=0;i<500000;i++)
+          ni += (long)((t == 1) ? test.interpret(noInput,null,null,memory) : test.execute(noInput,null,null,memory));
+        long end = System.currentTimeMillis();
+        double noDetection = (double)ni / ((double)((end > start) ? (end-start) : 1L) / 1000.0);
+        System.out.println(names[t]+" Cycle Detection Overhead: "+df.format(((noDetection / ips[t]) - 1.0) * 100.0)+"%");
+      }
+      setCycleDetection(true);
+
+      // Benchmark any genomes in character notation given on the command
+      // line (e.g. sample-lifeforms/seeker.gen), with every input channel
+      // reading a repeating pattern so that their loops get used
+      final int[] inputCounter = new int[1];
+      IntegerInput[] sampleInput = new IntegerInput[Archis.CHANNEL_COUNT];
+      for(int i=0;i<sampleInput.length;i++) {
+        sampleInput[i] = new IntegerInput() {
+          public int read()
+          {
+            return ((inputCounter[0]++ % 7) - 3);
+          }
+        };
+      }
+      for(int f=0;f<argv.length;f++) {
+        StringBuffer sg = new StringBuffer();
+        BufferedReader in = new BufferedReader(new FileReader(argv[f]));
+        String line;
+        while ((line = in.readLine()) != null)
+          sg.append(line);
+        in.close();
+        RegisterMachineGenome sample = new RegisterMachineGenome(new MersenneTwisterRandomSource(0L),sg.toString());
+        Program prog = sample.program();
+        int fused = 0;
+        for(int i=0;i<prog.code.length;i++) {
+          if (prog.code[i] > 20)
+            ++fused;
+        }
+        if (!sample.compile())
+          System.out.println("(Could not compile "+argv[f]+")");
+
+        System.out.println();
+        System.out.println(argv[f]+" ("+sample.size()+" codons, "+fused+" superinstructions):");
+        for(int t=0;t<3;t++) {
+          System.gc();
+          long ni = 0L;
+          long start = 0L;
+          for(int i=-100000;i<2000000;i++) {
+            if (i == 0) {
+              ni = 0L;
+              start = System.currentTimeMillis();
+            }
+            switch(t) {
+              case 0: ni += (long)sample.executePacked(sampleInput,null,null,memory); break;
+              case 1: ni += (long)sample.interpret(sampleInput,null,null,memory); break;
+              case 2: ni += (long)sample.execute(sampleInput,null,null,memory); break;
+            }
+          }
+          long end = System.currentTimeMillis();
+          System.out.println("  "+names[t]+" Instructions/Second: "+df.format((double)ni / ((double)((end > start) ? (end-start) : 1L) / 1000.0)));
+        }
+      }
+
+      sim.kill();
     } catch (Throwable t) {
       t.printStackTrace();
     }
@@ -424,7 +887,8 @@ public class RegisterMachineGenome implements Genome
     int tmp1 = genomeSize / 5;
     while ((tmp1 * 5) < genomeSize)
       ++tmp1;
-    genomeBits = new int[tmp1];
+    int[] genomeBits = new int[tmp1];
+    this.genomeBits = genomeBits;
 
     int bptr = 0;
     int pos = 0;
@@ -456,9 +920,8 @@ public class RegisterMachineGenome implements Genome
         ++loops;
     }
 
-    // Init maxInstructions and hashCode
+    // Init maxInstructions
     maxInstructions = ((loops > 1) ? (genomeSize * genomeSize * (loops+1)) : (genomeSize * genomeSize * 3));
-    hashCode = -1;
   }
 
   public Genome createNew(byte[] codons,int start,int length)
@@ -484,6 +947,11 @@ public class RegisterMachineGenome implements Genome
     return new RegisterMachineGenome(codons,0,codons.length);
   }
 
+  public GenomeBuilder createChildBuilder()
+  {
+    return new ChildBuilder(this);
+  }
+
   /**
    * <p>Constructs a genome from a genome in character notation.</p>
    *
@@ -528,7 +996,8 @@ public class RegisterMachineGenome implements Genome
     int tmp1 = genomeSize / 5;
     while ((tmp1 * 5) < genomeSize)
       ++tmp1;
-    genomeBits = new int[tmp1];
+    int[] genomeBits = new int[tmp1];
+    this.genomeBits = genomeBits;
 
     // Load codons into bitmap
     int bptr = 0;
@@ -561,9 +1030,8 @@ public class RegisterMachineGenome implements Genome
         ++loops;
     }
 
-    // Init maxInstructions and hashCode
+    // Init maxInstructions
     maxInstructions = ((loops > 1) ? (genomeSize * genomeSize * (loops+1)) : (genomeSize * genomeSize * 3));
-    hashCode = -1;
   }
 
   public Genome createNew(RandomSource randomSource,String syntheticGenome)
@@ -592,15 +1060,16 @@ public class RegisterMachineGenome implements Genome
     int tmp1 = genomeSize / 5;
     while ((tmp1 * 5) < genomeSize)
       ++tmp1;
-    genomeBits = new int[tmp1];
+    int[] genomeBits = new int[tmp1];
+    this.genomeBits = genomeBits;
 
     // Create random bits in bottom-most 30 bits of each int
+    randomSource.randomIntegers(genomeBits,0,genomeBits.length);
     for(int i=0;i<genomeBits.length;i++)
-      genomeBits[i] = randomSource.randomInteger() & USED_INT_BITS;
+      genomeBits[i] &= USED_INT_BITS;
 
-    // Init maxInstructions and hashCode
+    // Init maxInstructions
     maxInstructions = genomeSize * genomeSize * 4;
-    hashCode = -1;
   }
 
   public Genome createNew(RandomSource randomSource,int meanSize,int sizeDeviation)
@@ -610,35 +1079,106 @@ public class RegisterMachineGenome implements Genome
 
   public Genome canonicalize()
   {
-    WeakReference r;
-    Genome g;
-    if (canonicalGenomes == null)
-      canonicalGenomes = new WeakHashMap(131072,0.75F);
-    synchronized(canonicalGenomes) {
-      r = (WeakReference)canonicalGenomes.get(this);
-      if (r == null) {
-        canonicalGenomes.put(this,new WeakReference(this));
-        return this;
-      } else if ((g = (Genome)r.get()) == null) {
-        canonicalGenomes.put(this,new WeakReference(this));
-        return this;
-      }
-    }
+    // A new canonical genome will be executed, so make sure it has its
+    // flat bit field before other threads can see it
+    bits();
+    Genome g = canonicalGenomes.intern(this);
+
+    // Analyze new canonical genomes once here, since every cell sharing
+    // this genome will ask
+    if (g == this)
+      analysisFlags();
     return g;
   }
 
+  public void release()
+  {
+    canonicalGenomes.release(this);
+  }
+
+  /**
+   * Gets the pool of canonical register machine genomes
+   *
+   * @return Genome pool
+   */
+  public static GenomePool genomePool()
+  {
+    return canonicalGenomes;
+  }
+
   /**
    * Returns a hash code for this genome
    *
-   * @return Hash code
+   * @return Hash code (folded from checksum64())
    */
   public int hashCode()
   {
-    if (hashCode == -1) {
-      for(int i=0;i<genomeBits.length;i++)
-        hashCode ^= genomeBits[i];
+    long h = checksum64();
+    return (int)(h ^ (h >>> 32));
+  }
+
+  public long checksum64()
+  {
+    long h = hash64;
+    if (h == 0L) {
+      h = mix64((long)genomeSize);
+      int[] bits = genomeBits;
+      if (bits != null) {
+        for(int i=0;i<bits.length;i++)
+          h += wordHash(i,bits[i]);
+      } else {
+        int[][] c = chunks;
+        for(int k=0,n=0;k<c.length;k++) {
+          for(int i=0;i<c[k].length;i++)
+            h += wordHash(n++,c[k][i]);
+        }
+      }
+      hash64 = h = storedHash(h);
     }
-    return hashCode;
+    return h;
+  }
+
+  /**
+   * Internal method to map a computed hash to the value stored in hash64
+   *
+   * @param h Computed hash
+   * @return Hash, or 1 if it is 0 (which means not computed)
+   */
+  private static long storedHash(long h)
+  {
+    return ((h == 0L) ? 1L : h);
+  }
+
+  /**
+   * <p>Internal method to hash one word of the bit field</p>
+   *
+   * <p>The 64-bit hash of a genome is the sum of this for every word plus
+   * a hash of its size, so it can be updated for a changed word by
+   * subtracting the old word's hash and adding the new one's.  Each word
+   * is mixed together with its position, so unlike an XOR of the words it
+   * changes when words are swapped or when two words change the same way.</p>
+   *
+   * @param n Position of word
+   * @param word Value of word
+   * @return Hash
+   */
+  private static long wordHash(int n,int word)
+  {
+    return mix64(((long)n << 32) | ((long)word & 0xffffffffL));
+  }
+
+  /**
+   * Internal method to mix the bits of a 64-bit value (the SplitMix64 finalizer)
+   *
+   * @param z Value
+   * @return Mixed value
+   */
+  private static long mix64(long z)
+  {
+    z += 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return (z ^ (z >>> 31));
   }
 
   /**
@@ -651,30 +1191,175 @@ public class RegisterMachineGenome implements Genome
   {
     if (o != null) {
       if (o instanceof RegisterMachineGenome) {
-        if ((((RegisterMachineGenome)o).hashCode == hashCode)&&(((RegisterMachineGenome)o).genomeSize == genomeSize))
-          return Arrays.equals(((RegisterMachineGenome)o).genomeBits,genomeBits);
+        if ((((RegisterMachineGenome)o).genomeSize == genomeSize)&&(((RegisterMachineGenome)o).checksum64() == checksum64()))
+          return sameBits((RegisterMachineGenome)o);
       }
     }
     return false;
   }
 
+  /**
+   * <p>Internal method to compare bit fields with another genome</p>
+   *
+   * <p>This compares chunks where both genomes have them, so that chunks
+   * shared between relatives are not compared word by word, and never
+   * builds a flat bit field.</p>
+   *
+   * @param g Genome to compare with
+   * @return True if bit fields are equal
+   */
+  private boolean sameBits(RegisterMachineGenome g)
+  {
+    if (words() != g.words())
+      return false;
+
+    int[][] c = chunks;
+    int[][] gc = g.chunks;
+    if ((c != null)&&(gc != null)) {
+      for(int k=0;k<c.length;k++) {
+        if ((c[k] != gc[k])&&(!Arrays.equals(c[k],gc[k])))
+          return false;
+      }
+      return true;
+    }
+
+    int[] bits = genomeBits;
+    int[] gbits = g.genomeBits;
+    if ((bits != null)&&(gbits != null))
+      return Arrays.equals(bits,gbits);
+
+    // One has only chunks and the other a flat bit field
+    if (c == null) {
+      c = gc;
+      gbits = bits;
+    }
+    for(int k=0,n=0;k<c.length;k++) {
+      for(int i=0;i<c[k].length;i++) {
+        if (c[k][i] != gbits[n++])
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Internal method to get the number of words in the bit field
+   *
+   * @return Number of words
+   */
+  private int words()
+  {
+    int[] bits = genomeBits;
+    if (bits != null)
+      return bits.length;
+    int[][] c = chunks;
+    return (((c.length - 1) << CHUNK_SHIFT) + c[c.length - 1].length);
+  }
+
+  /**
+   * <p>Gets the flat bit field, building it from chunks if needed</p>
+   *
+   * <p>Point mutants of large genomes start out with only chunks, since
+   * most (e.g. all but the last of a chain of mutations) are never
+   * executed.  The flat bit field is built when one is canonicalized for
+   * a living cell, or is executed or otherwise read in full.</p>
+   *
+   * @return Bit field
+   */
+  private int[] bits()
+  {
+    int[] bits = genomeBits;
+    if (bits == null) {
+      synchronized(this) {
+        bits = genomeBits;
+        if (bits == null) {
+          int[][] c = chunks;
+          bits = new int[words()];
+          for(int k=0;k<c.length;k++)
+            System.arraycopy(c[k],0,bits,k << CHUNK_SHIFT,c[k].length);
+          genomeBits = bits;
+        }
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * <p>Gets the bit field as chunks, splitting it up if needed</p>
+   *
+   * <p>Chunks are never modified once made, so they can be shared by any
+   * number of genomes.</p>
+   *
+   * @return Chunks of CHUNK_WORDS words (the last may be shorter)
+   */
+  private int[][] chunks()
+  {
+    int[][] c = chunks;
+    if (c == null) {
+      // Races are harmless: any thread that splits gets the same result
+      int[] bits = genomeBits;
+      c = new int[(bits.length + CHUNK_WORDS - 1) >> CHUNK_SHIFT][];
+      for(int k=0;k<c.length;k++) {
+        int start = k << CHUNK_SHIFT;
+        c[k] = new int[((bits.length - start) < CHUNK_WORDS) ? (bits.length - start) : CHUNK_WORDS];
+        System.arraycopy(bits,start,c[k],0,c[k].length);
+      }
+      chunks = c;
+    }
+    return c;
+  }
+
   public Genome pointMutation(RandomSource randomSource)
   {
-    // Make a copy of this genome
     RegisterMachineGenome newGenome = new RegisterMachineGenome();
     newGenome.maxInstructions = maxInstructions;
-    newGenome.hashCode = -1;
     newGenome.genomeSize = genomeSize;
-    newGenome.genomeBits = new int[genomeBits.length];
-    for(int i=0;i<genomeBits.length;i++)
-      newGenome.genomeBits[i] = genomeBits[i];
 
-    // Mutate a bit
+    // Pick a bit to mutate
+    int words = words();
     int bit = (randomSource.randomPositiveInteger() % 30)+1;
-    int n = randomSource.randomPositiveInteger() % genomeBits.length;
-    if ((newGenome.genomeBits[n] & BITS[bit]) == 0)
-      newGenome.genomeBits[n] |= BITS[bit];
-    else newGenome.genomeBits[n] &= NOTBITS[bit];
+    int n = randomSource.randomPositiveInteger() % words;
+
+    // Large genomes share every chunk but the mutated one with this
+    // genome, and are left to be decoded if and when they are executed
+    if (words > CHUNK_WORDS) {
+      int[][] c = chunks();
+      int[][] nc = new int[c.length][];
+      System.arraycopy(c,0,nc,0,c.length);
+      int k = n >> CHUNK_SHIFT;
+      int w = n & (CHUNK_WORDS - 1);
+      nc[k] = new int[c[k].length];
+      System.arraycopy(c[k],0,nc[k],0,c[k].length);
+      if ((nc[k][w] & BITS[bit]) == 0)
+        nc[k][w] |= BITS[bit];
+      else nc[k][w] &= NOTBITS[bit];
+      newGenome.chunks = nc;
+
+      long h = hash64;
+      if ((h != 0L)&&(h != 1L))
+        newGenome.hash64 = storedHash(h - wordHash(n,c[k][w]) + wordHash(n,nc[k][w]));
+      return newGenome;
+    }
+
+    // Make a copy of this genome and mutate a bit
+    int[] bits = genomeBits;
+    int[] newBits = new int[bits.length];
+    for(int i=0;i<bits.length;i++)
+      newBits[i] = bits[i];
+    if ((newBits[n] & BITS[bit]) == 0)
+      newBits[n] |= BITS[bit];
+    else newBits[n] &= NOTBITS[bit];
+    newGenome.genomeBits = newBits;
+
+    // Update the hash for the word that changed (see wordHash()), unless
+    // it is not computed yet or is 1 (which may stand for 0)
+    long h = hash64;
+    if ((h != 0L)&&(h != 1L))
+      newGenome.hash64 = storedHash(h - wordHash(n,bits[n]) + wordHash(n,newBits[n]));
+
+    // The mutant is not decoded even if this genome is, since most (e.g.
+    // all but the last of a chain of mutations) are never executed, and
+    // like any new genome it starts out in the packed tier
 
     return newGenome;
   }
@@ -689,6 +1374,7 @@ public class RegisterMachineGenome implements Genome
     int pos = 0;
     int bptr = 0;
     int codon = 0;
+    int[] genomeBits = bits();
     char[] r = new char[genomeSize];
     for(int i=0;i<genomeSize;i++) {
       // Get codon at current position and advance
@@ -723,11 +1409,12 @@ public class RegisterMachineGenome implements Genome
     throws IOException
   {
     int n = 0;
-    for(int i=0;i<genomeBits.length;i++) {
-      out.write((genomeBits[i] >> 24) & 0x3f);
-      out.write((genomeBits[i] >> 16) & 0xff);
-      out.write((genomeBits[i] >> 8) & 0xff);
-      out.write(genomeBits[i] & 0xff);
+    int[] bits = bits();
+    for(int i=0;i<bits.length;i++) {
+      out.write((bits[i] >> 24) & 0x3f);
+      out.write((bits[i] >> 16) & 0xff);
+      out.write((bits[i] >> 8) & 0xff);
+      out.write(bits[i] & 0xff);
       n += 4;
     }
     return n;
@@ -742,8 +1429,9 @@ public class RegisterMachineGenome implements Genome
   {
     int pos = 0;
     int bptr = 0;
+    int[] bits = bits();
     for(int i=0;i<genomeSize;i++) {
-      ++codonCounts[(genomeBits[bptr] >> (24-(6*pos++))) & TOP_6_INT_BITS];
+      ++codonCounts[(bits[bptr] >> (24-(6*pos++))) & TOP_6_INT_BITS];
       if (pos >= 5) {
         ++bptr;
         pos = 0;
@@ -763,12 +1451,1042 @@ public class RegisterMachineGenome implements Genome
 
   public int sizeBytes()
   {
-    return (genomeBits.length * 4);
+    return (words() * 4);
+  }
+
+  /**
+   * <p>Gets this genome's decoded program, decoding it if needed</p>
+   *
+   * <p>The program is built on first execution and kept for the life of
+   * this object; since living cells share canonical genomes, this happens
+   * about once per distinct genome.  The packed bits remain the storage
+   * and serialized form.</p>
+   *
+   * @return Decoded program
+   */
+  private Program program()
+  {
+    Program prog = program;
+    if (prog == null) {
+      // Races are harmless: any thread that decodes gets the same result
+      program = prog = decode();
+    }
+    return prog;
+  }
+
+  /**
+   * Internal method to decode this genome without keeping the result
+   *
+   * @return Decoded program
+   */
+  private Program decode()
+  {
+    byte[] ops = new byte[genomeSize];
+    int[] bits = bits();
+    int bptr = 0;
+    int pos = 0;
+    for(int i=0;i<genomeSize;i++) {
+      ops[i] = CODON_EXEC_MAPPING[(bits[bptr] >> (24-(6*pos++))) & TOP_6_INT_BITS];
+      if (pos >= 5) {
+        ++bptr;
+        pos = 0;
+      }
+    }
+    return new Program(ops);
+  }
+
+  /**
+   * <p>Finds the codons of a decoded program that can ever be executed</p>
+   *
+   * <p>Execution starts after the first GO and can only go forward to the
+   * next codon, past the matching REP of a LOOP, or past the GO ending an
+   * intron.  A REP only ever returns to a LOOP that has already been
+   * reached, so it adds nothing beyond the next codon.</p>
+   *
+   * @param ops Execution opcodes
+   * @param jump Jump table
+   * @param firstGo Position of first GO or ops.length if none
+   * @return Array of ops.length+1 flags (the last is for the end)
+   */
+  static boolean[] reachableCodons(byte[] ops,int[] jump,int firstGo)
+  {
+    int genomeSize = ops.length;
+    boolean[] reachable = new boolean[genomeSize + 1];
+    int[] work = new int[(genomeSize * 2) + 2];
+    int nwork = 0;
+    if (firstGo < genomeSize)
+      work[nwork++] = firstGo + 1;
+    while (nwork > 0) {
+      int i = work[--nwork];
+      if ((i > genomeSize)||reachable[i])
+        continue;
+      reachable[i] = true;
+      if (i == genomeSize)
+        continue;
+      switch(ops[i]) {
+        case 9: /* LOOP */
+          work[nwork++] = i + 1;
+          work[nwork++] = jump[i] + 1;
+          break;
+        case 18: /* STOP */
+          work[nwork++] = jump[i] + 1;
+          break;
+        default:
+          work[nwork++] = i + 1;
+          break;
+      }
+    }
+    return reachable;
+  }
+
+  public int analysisFlags()
+  {
+    int f = analysis;
+    if (f < 0) {
+      // Decode just for this if not already decoded, so that analysis does
+      // not move the genome out of the packed tier
+      Program prog = program;
+      if (prog == null)
+        prog = decode();
+      boolean[] reachable = reachableCodons(prog.ops,prog.jump,prog.firstGo);
+      f = ANALYSIS_INERT|ANALYSIS_OUTPUT_FREE|ANALYSIS_READ_FREE;
+      for(int i=0;i<genomeSize;i++) {
+        if (reachable[i]) {
+          f &= ~ANALYSIS_INERT;
+          if (prog.ops[i] == 12) /* READ */
+            f &= ~ANALYSIS_READ_FREE;
+          else if (prog.ops[i] == 19) /* WRITE */
+            f &= ~ANALYSIS_OUTPUT_FREE;
+        }
+      }
+      analysis = f;
+    }
+    return f;
+  }
+
+  /**
+   * <p>Sets the default execution counts at which genomes move to faster tiers</p>
+   *
+   * <p>A genome is run by the packed interpreter for its first
+   * decodeThreshold executions, then decoded, and then compiled to
+   * bytecode once it has been executed compileThreshold times.  A
+   * threshold of 0 promotes genomes immediately and a negative threshold
+   * disables that tier.  Each universe has its own thresholds (see
+   * Universe.setTierThresholds()), which start out as these defaults.
+   * These are also used for genomes executed without a universe.</p>
+   *
+   * @param decodeThreshold Executions before decoding
+   * @param compileThreshold Executions before compiling
+   */
+  public static void setTierThresholds(int decodeThreshold,int compileThreshold)
+  {
+    RegisterMachineGenome.decodeThreshold = decodeThreshold;
+    RegisterMachineGenome.compileThreshold = compileThreshold;
+  }
+
+  /**
+   * Gets the default number of executions before a genome is decoded
+   *
+   * @return Decode threshold (negative if disabled)
+   */
+  public static int getDecodeThreshold()
+  {
+    return decodeThreshold;
+  }
+
+  /**
+   * Gets the default number of executions before a genome is compiled
+   *
+   * @return Compile threshold (negative if disabled)
+   */
+  public static int getCompileThreshold()
+  {
+    return compileThreshold;
+  }
+
+  /**
+   * <p>Sets whether to detect endless loops</p>
+   *
+   * <p>When this is on, the decoded and compiled tiers check for a genome
+   * returning to exactly the same state with no I/O in between.  Such a
+   * genome can never finish, so instead of running it out the cell is
+   * charged straight away for the instructions it would have executed and
+   * dies at the same instruction for the same reason (starvation or loop
+   * overflow).  Each universe has its own setting (see
+   * Universe.setCycleDetection()), which starts out as this default.  This
+   * is also used for genomes executed without a universe.</p>
+   *
+   * @param cycleDetection Detect endless loops?
+   */
+  public static void setCycleDetection(boolean cycleDetection)
+  {
+    RegisterMachineGenome.cycleDetection = cycleDetection;
+  }
+
+  /**
+   * Gets whether endless loops are detected by default
+   *
+   * @return Detect endless loops?
+   */
+  public static boolean getCycleDetection()
+  {
+    return cycleDetection;
+  }
+
+  /**
+   * Internal method to get this thread's cycle detector reset for a new execution
+   *
+   * @param output Universe executing the genome or null if none
+   * @return Cycle detector or null if cycle detection is off
+   */
+  static CycleDetector cycleDetector(Universe output)
+  {
+    if (!((output != null) ? output.getCycleDetection() : cycleDetection))
+      return null;
+    CycleDetector d = ((PositionInformationStack)threadLocalStack.get()).detector;
+    d.reset();
+    return d;
+  }
+
+  /**
+   * <p>Gets the number of genomes that could not be compiled</p>
+   *
+   * <p>This counts genomes whose generated bytecode failed to load or
+   * verify since this JVM started, not genomes left to the interpreter
+   * because they are too large.  These are executed by the decoded
+   * interpreter instead, so a nonzero count means lost speed and
+   * probably a bug in the compiler rather than wrong results.</p>
+   *
+   * @return Number of failed compiles
+   */
+  public static long getCompileFailures()
+  {
+    return compileFailures.get();
+  }
+
+  /**
+   * <p>Gets the tier this genome would be executed in by a universe</p>
+   *
+   * <p>Genomes are shared between universes in one JVM, so this depends on
+   * the universe's thresholds, e.g. a genome compiled by one universe is
+   * still interpreted by another with compiling disabled.</p>
+   *
+   * @param output Universe executing the genome or null for the defaults
+   * @return TIER_PACKED, TIER_DECODED, or TIER_COMPILED
+   */
+  public int executionTier(Universe output)
+  {
+    int ct,dt;
+    if (output != null) {
+      ct = output.getCompileThreshold();
+      dt = output.getDecodeThreshold();
+    } else {
+      ct = compileThreshold;
+      dt = decodeThreshold;
+    }
+
+    // Same as the choice made by execute() for the next execution
+    if ((ct >= 0)&&(compiled != null))
+      return TIER_COMPILED;
+    if ((dt < 0)||((program == null)&&(executions < dt)))
+      return TIER_PACKED;
+    return TIER_DECODED;
+  }
+
+  /**
+   * <p>Returns whether cells with this genome can be executed in lockstep</p>
+   *
+   * <p>This is true for genomes that can neither read nor write (so that
+   * executing them only changes memory and energy) and that execute
+   * something.  Compiled genomes run faster one cell at a time than in
+   * lockstep, so once a genome is compiled this is false.</p>
+   *
+   * @return True if executeLockstep() is worth using
+   */
+  boolean lockstepCandidate()
+  {
+    return ((compiled == null)&&((analysisFlags() & (ANALYSIS_INERT|ANALYSIS_READ_FREE|ANALYSIS_OUTPUT_FREE)) == (ANALYSIS_READ_FREE|ANALYSIS_OUTPUT_FREE)));
+  }
+
+  /**
+   * <p>Counts executions done by executeLockstep()</p>
+   *
+   * <p>These count towards compiling the genome like other executions,
+   * and their instructions are counted in the decoded tier.</p>
+   *
+   * @param lanes Number of lanes that finished
+   * @param instructions Total instructions run by those lanes
+   * @param output Universe executing them
+   */
+  void countLockstep(int lanes,long instructions,Universe output)
+  {
+    int e = executions;
+    executions = (((2147483647 - e) > lanes) ? (e + lanes) : 2147483647);
+    output.countTierInstructions(TIER_DECODED,instructions);
+    int ct = output.getCompileThreshold();
+    if ((ct >= 0)&&(executions >= ct)&&(!compileFailed))
+      compile();
+  }
+
+  /**
+   * <p>Compiles this genome to JVM bytecode if it has not been already</p>
+   *
+   * <p>This happens automatically once a genome has been executed as many
+   * times as the compile threshold.  Genomes too large for HotSpot to
+   * compile efficiently are left to the interpreter, as are genomes whose
+   * bytecode fails to load or verify (these are counted by
+   * getCompileFailures()).</p>
+   *
+   * @return True if this genome is now compiled
+   */
+  public boolean compile()
+  {
+    synchronized(this) {
+      if ((compiled == null)&&(!compileFailed)) {
+        Program prog = program();
+        try {
+          compiled = GenomeCompiler.compile(prog.ops,prog.jump,prog.firstGo,bits(),maxInstructions);
+          if (compiled == null)
+            compileFailed = true;
+        } catch (LinkageError e) {
+          // ClassFormatError, VerifyError, etc. from loading the class
+          compileFailed();
+        } catch (IOException e) {
+          compileFailed();
+        } catch (ReflectiveOperationException e) {
+          compileFailed();
+        } catch (RuntimeException e) {
+          compileFailed();
+        }
+      }
+      return (compiled != null);
+    }
+  }
+
+  /**
+   * Internal method to mark this genome as not compilable after an error
+   */
+  private void compileFailed()
+  {
+    compileFailed = true;
+    compileFailures.incrementAndGet();
   }
 
   public int execute(IntegerInput[] input,Universe output,Cell cell,int[] memory)
     throws DeathException
   {
+    int n;
+
+    // Each universe has its own thresholds and counts instructions in each
+    // tier (the defaults are used when there is no universe, e.g. in
+    // benchmarks)
+    int ct,dt;
+    if (output != null) {
+      ct = output.getCompileThreshold();
+      dt = output.getDecodeThreshold();
+    } else {
+      ct = compileThreshold;
+      dt = decodeThreshold;
+    }
+
+    CompiledGenome c = compiled;
+    if ((c == null)||(ct < 0)) {
+      // Count executions until promoted (the count is approximate with
+      // several threads, which does not matter here)
+      int e = executions;
+      if (e < 2147483647)
+        executions = ++e;
+
+      if ((ct >= 0)&&(e >= ct)&&(!compileFailed)&&compile())
+        c = compiled;
+      else {
+        if ((dt < 0)||((program == null)&&(e <= dt))) {
+          n = executePacked(input,output,cell,memory);
+          if (output != null)
+            output.countTierInstructions(TIER_PACKED,(long)n);
+        } else {
+          n = interpret(input,output,cell,memory);
+          if (output != null)
+            output.countTierInstructions(TIER_DECODED,(long)n);
+        }
+        return n;
+      }
+    }
+
+    n = c.execute(input,output,cell,memory);
+    if (output != null)
+      output.countTierInstructions(TIER_COMPILED,(long)n);
+    return n;
+  }
+
+  /**
+   * <p>Gets the instruction count up to which a cell can run without
+   * starving or exceeding the instruction limit</p>
+   *
+   * @param cell Cell being executed or null
+   * @param ictr Instructions executed and charged for so far
+   * @param maxInstructions Maximum number of instructions per execution
+   * @return Instruction count that can be reached safely
+   */
+  static int instructionLimit(Cell cell,int ictr,int maxInstructions)
+  {
+    int limit = maxInstructions;
+    if (cell != null) {
+      int e = cell.spendableEnergy();
+      if (e < (limit - ictr))
+        limit = ictr + e;
+    }
+    return limit;
+  }
+
+  /**
+   * <p>Charges a cell for the instructions after charged up to ictr</p>
+   *
+   * <p>Instructions that cannot starve the cell or overflow are charged
+   * with one call to decEnergy(int).  Any after that are charged and
+   * checked against the instruction limit one at a time, so death comes
+   * at exactly the same instruction and for the same reason as when each
+   * instruction is charged as it runs.</p>
+   *
+   * @param cell Cell being executed or null
+   * @param charged Instructions already charged for
+   * @param ictr Instructions executed
+   * @param maxInstructions Maximum number of instructions per execution
+   * @throws DeathException Cell starved or exceeded the instruction limit
+   */
+  static void chargeInstructions(Cell cell,int charged,int ictr,int maxInstructions)
+    throws DeathException
+  {
+    // (maxInstructions can be negative for enormous genomes, in which case
+    // nothing is safe)
+    int safe = instructionLimit(cell,charged,maxInstructions);
+    if (safe > ictr)
+      safe = ictr;
+    else if (safe < charged)
+      safe = charged;
+    if ((cell != null)&&(safe > charged))
+      cell.decEnergy(safe - charged);
+    for(int k=safe+1;k<=ictr;k++) {
+      if (cell != null)
+        cell.decEnergy();
+      if (k > maxInstructions)
+        throw instructionOverflowException;
+    }
+  }
+
+  /**
+   * <p>Ends an execution found to be in an endless loop</p>
+   *
+   * <p>The cell is charged for every instruction it would have executed
+   * going round the loop until it starved or exceeded the instruction
+   * limit, so it dies at the same instruction and for the same reason as
+   * if the loop had actually been run.</p>
+   *
+   * @param cell Cell being executed or null
+   * @param charged Instructions already charged for
+   * @param maxInstructions Maximum number of instructions per execution
+   * @throws DeathException Always
+   */
+  static void nonTerminating(Cell cell,int charged,int maxInstructions)
+    throws DeathException
+  {
+    chargeInstructions(cell,charged,((maxInstructions < 2147483647) ? (maxInstructions + 1) : maxInstructions),maxInstructions);
+    throw instructionOverflowException;
+  }
+
+  /**
+   * <p>Executes this genome with the decoded interpreter</p>
+   *
+   * <p>Instead of calling decEnergy() for every instruction this charges
+   * for instructions in batches, before each READ or WRITE and at the end.
+   * Only when an instruction might starve the cell or exceed the limit
+   * does it stop to charge for everything up to it.</p>
+   *
+   * <p>Runs of simple instructions are executed as superinstructions (see
+   * Program), which count and charge for every codon in the run.</p>
+   *
+   * @param input Input channels or null for none
+   * @param output Universe to send output to or null for none
+   * @param cell Cell being executed or null to not charge energy
+   * @param memory Cell state memory
+   * @return Number of instructions executed
+   * @throws DeathException Cell died during execution
+   */
+  int interpret(IntegerInput[] input,Universe output,Cell cell,int[] memory)
+    throws DeathException
+  {
+    // Packed bits (read once, since the field is volatile)
+    int[] genomeBits = bits();
+
+    // State of virtual machine
+    int a = 0;
+    int p = 0;
+    int channel = 0;
+
+    // Instruction execution counter, instructions charged for so far, and
+    // count up to which instructions can run without starving or
+    // overflowing (instructions are charged for in batches)
+    int ictr = 0;
+    int charged = 0;
+    int limit = instructionLimit(cell,0,maxInstructions);
+
+    // Get a stack big enough to hold as many loops as this genome can
+    // ever have open at once
+    Program prog = program();
+    PositionInformationStack loopStack = (PositionInformationStack)threadLocalStack.get();
+    if (loopStack.stack.length < prog.maxLoopDepth)
+      loopStack.stack = new int[prog.maxLoopDepth];
+
+    // Start with an empty stack so frames left over from a previous
+    // execution on this thread (e.g. unmatched LOOPs) are never popped
+    loopStack.stackPtr = 0;
+
+    // Watch for endless loops if there are any loops, once there have
+    // been enough back jumps without I/O to make it worthwhile
+    CycleDetector detector = null;
+    int warmup = CycleDetector.WARMUP_BACK_JUMPS;
+    if (((output != null) ? output.getCycleDetection() : cycleDetection)&&(prog.maxLoopDepth > 0)) {
+      detector = loopStack.detector;
+      detector.reset();
+    }
+
+    // Execute genome one decoded opcode or superinstruction at a time,
+    // starting just after the first GO (the start codon of the first gene)
+    byte[] ops = prog.ops;
+    byte[] code = prog.code;
+    int[] jump = prog.jump;
+    int[] arg = prog.arg;
+    int mv = 0;
+    for(int i=prog.firstGo+1;i<genomeSize;i++) {
+      // Each instruction actually executed costs one point, which is
+      // charged later unless this one might starve or overflow
+      if (++ictr > limit) {
+        chargeInstructions(cell,charged,ictr,maxInstructions);
+        charged = ictr;
+        limit = instructionLimit(cell,ictr,maxInstructions);
+      }
+
+      // Execute codon instruction
+      switch (code[i]) {
+        case 0: /* ADD */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              a += memory[p];
+            else a += memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            a += (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          break;
+        case 1: /* AND */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              a &= memory[p];
+            else a &= memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            a &= (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          break;
+        case 2: /* BACK */
+          --p;
+          break;
+        case 3: /* CMP */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              mv = memory[p];
+            else mv = memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            mv = (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          a = ((a < mv) ? -1 : ((a == mv) ? 0 : 1));
+          break;
+        case 4: /* DEC */
+          --a;
+          break;
+        case 5: /* DIV */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              mv = memory[p];
+            else mv = memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            mv = (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          if (mv == 0)
+            a = 0;
+          else a /= mv;
+          break;
+        case 6: /* FWD */
+          ++p;
+          break;
+        case 7: /* GO */
+          p = a;
+          break;
+        case 8: /* INC */
+          ++a;
+          break;
+        case 9: /* LOOP */
+          // Push position if 'a' is nonzero, otherwise skip past the
+          // matching REP
+          if (a == 0)
+            i = jump[i];
+          else loopStack.stack[loopStack.stackPtr++] = i;
+          break;
+        case 10: /* MUL */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              a *= memory[p];
+            else a *= memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            a *= (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          break;
+        case 11: /* OR */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              a |= memory[p];
+            else a |= memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            a |= (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          break;
+        case 12: /* READ */
+          // Input and output can look at or change energy, so pay for
+          // everything so far first
+          chargeInstructions(cell,charged,ictr,maxInstructions);
+          charged = ictr;
+          if (detector != null) {
+            detector.inputOutput();
+            warmup = CycleDetector.WARMUP_BACK_JUMPS;
+          }
+          a = ((input == null) ? 0 : ((input[channel] == null) ? 0 : input[channel].read()));
+          limit = instructionLimit(cell,ictr,maxInstructions);
+          break;
+        case 13: /* REP */
+          if (loopStack.stackPtr > 0) {
+            if (a != 0) {
+              // Restore position of matching LOOP if 'a' is nonzero,
+              // unless this has all happened before
+              i = loopStack.stack[--loopStack.stackPtr]-1;
+              if ((detector != null)&&(--warmup < 0)&&detector.backJump(i,a,p,channel,loopStack.stack,loopStack.stackPtr,memory))
+                nonTerminating(cell,charged,maxInstructions);
+              continue;
+            } else {
+              // Drop it off the stack and move on if a == 0
+              --loopStack.stackPtr;
+            }
+          }
+          break;
+        case 14: /* SCH */
+          channel = ((a == -2147483648) ? 2147483647 : Math.abs(a)) % Archis.CHANNEL_COUNT;
+          break;
+        case 15: /* SHL */
+          a <<= 1;
+          break;
+        case 16: /* SHR */
+          a >>= 1;
+          break;
+        case 17: /* STA */
+          if (p >= 0) {
+            // Set memory value at location
+            if (p < memory.length)
+              memory[p] = a;
+            else memory[p % memory.length] = a;
+          } else {
+            // Set genome value at location (not implemented at the moment)
+          }
+          a = 0;
+          break;
+        case 18: /* STOP */
+          // Skip the intron up to and including the next GO
+          a = 0;
+          channel = 0;
+          p = 0;
+          i = jump[i];
+          break;
+        case 19: /* WRITE */
+          chargeInstructions(cell,charged,ictr,maxInstructions);
+          charged = ictr;
+          if (detector != null) {
+            detector.inputOutput();
+            warmup = CycleDetector.WARMUP_BACK_JUMPS;
+          }
+          if (output != null)
+            output.evaluateOutput(cell,channel,a);
+          limit = instructionLimit(cell,ictr,maxInstructions);
+          break;
+        case 20: /* XOR */
+          if (p >= 0) {
+            // Pointers >= 0 read memory locations
+            if (p < memory.length)
+              a ^= memory[p];
+            else a ^= memory[p % memory.length];
+          } else {
+            // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+            mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+            a ^= (genomeBits[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+          }
+          break;
+
+        // Superinstructions (see Program) run their whole run at once if
+        // that cannot starve or overflow, and otherwise just the first
+        // codon with the rest following one at a time
+        case 21: /* INC/DEC run */
+          if ((jump[i] - i) <= (limit - ictr)) {
+            ictr += jump[i] - i;
+            a += arg[i];
+            i = jump[i];
+          } else if (ops[i] == 8)
+            ++a;
+          else --a;
+          break;
+        case 22: /* FWD/BACK run */
+          if ((jump[i] - i) <= (limit - ictr)) {
+            ictr += jump[i] - i;
+            p += arg[i];
+            i = jump[i];
+          } else if (ops[i] == 6)
+            ++p;
+          else --p;
+          break;
+        case 23: /* SHL run */
+          if ((jump[i] - i) <= (limit - ictr)) {
+            ictr += jump[i] - i;
+            a = ((arg[i] < 32) ? (a << arg[i]) : 0);
+            i = jump[i];
+          } else a <<= 1;
+          break;
+        case 24: /* SHR run */
+          if ((jump[i] - i) <= (limit - ictr)) {
+            ictr += jump[i] - i;
+            a >>= ((arg[i] < 31) ? arg[i] : 31);
+            i = jump[i];
+          } else a >>= 1;
+          break;
+        case 25: /* STA at an offset from p */
+          if ((jump[i] - i) <= (limit - ictr)) {
+            ictr += jump[i] - i;
+            mv = p + arg[i];
+            if (mv >= 0) {
+              if (mv < memory.length)
+                memory[mv] = a;
+              else memory[mv % memory.length] = a;
+            }
+            a = 0;
+            i = jump[i];
+          } else if (ops[i] == 6)
+            ++p;
+          else --p;
+          break;
+      }
+    }
+
+    chargeInstructions(cell,charged,ictr,maxInstructions);
+    return ictr;
+  }
+
+  /**
+   * <p>Executes this genome for several cells at once in lockstep</p>
+   *
+   * <p>Living cells share canonical genome objects, so many cells often
+   * run exactly the same program and differ only in their memory.  This
+   * runs one lane per cell over a struct-of-arrays register file, decoding
+   * and dispatching each instruction once for all lanes.  Lanes share the
+   * position, the instruction count and the loop stack, so they stay in
+   * lockstep until a LOOP or REP sends some lanes a different way.  When
+   * that happens the larger side carries on and the other lanes are
+   * dropped (their instruction count is left at -1) so that their cells
+   * can be run on their own.</p>
+   *
+   * <p>Nothing is charged for and there is no input or output: all lanes
+   * are dropped at a READ or WRITE, or if the count passes the budget or
+   * maxInstructions.  A lane that finishes has run exactly as the cell
+   * would on its own, so charging its cell for the instructions
+   * afterwards gives the same result as executing it.</p>
+   *
+   * @param memory State memory of each lane (modified in place, and rows may be reordered)
+   * @param id Receives the original lane number of each row of memory
+   * @param lanes Number of lanes
+   * @param instructions Receives the instruction count of each original lane, or -1 if dropped
+   * @param budget Maximum number of instructions to run
+   * @return Number of lanes that finished
+   */
+  int executeLockstep(int[][] memory,int[] id,int lanes,int[] instructions,int budget)
+  {
+    // Per-lane registers (the channel is not needed without I/O)
+    int[] a = new int[lanes];
+    int[] p = new int[lanes];
+    int n = lanes;
+    for(int l=0;l<lanes;l++) {
+      id[l] = l;
+      instructions[l] = -1;
+    }
+
+    Program prog = program();
+    int[] stack = new int[prog.maxLoopDepth];
+    int sp = 0;
+    if (budget > maxInstructions)
+      budget = maxInstructions;
+
+    byte[] code = prog.code;
+    int[] jump = prog.jump;
+    int[] arg = prog.arg;
+    int ictr = 0;
+    int mv,z;
+    for(int i=prog.firstGo+1;(i<genomeSize)&&(n > 0);i++) {
+      if (++ictr > budget) {
+        n = 0;
+        break;
+      }
+
+      switch (code[i]) {
+        case 0: /* ADD */
+          for(int l=0;l<n;l++)
+            a[l] += load(memory[l],p[l]);
+          break;
+        case 1: /* AND */
+          for(int l=0;l<n;l++)
+            a[l] &= load(memory[l],p[l]);
+          break;
+        case 2: /* BACK */
+          for(int l=0;l<n;l++)
+            --p[l];
+          break;
+        case 3: /* CMP */
+          for(int l=0;l<n;l++) {
+            mv = load(memory[l],p[l]);
+            a[l] = ((a[l] < mv) ? -1 : ((a[l] == mv) ? 0 : 1));
+          }
+          break;
+        case 4: /* DEC */
+          for(int l=0;l<n;l++)
+            --a[l];
+          break;
+        case 5: /* DIV */
+          for(int l=0;l<n;l++) {
+            mv = load(memory[l],p[l]);
+            a[l] = ((mv == 0) ? 0 : (a[l] / mv));
+          }
+          break;
+        case 6: /* FWD */
+          for(int l=0;l<n;l++)
+            ++p[l];
+          break;
+        case 7: /* GO */
+          System.arraycopy(a,0,p,0,n);
+          break;
+        case 8: /* INC */
+          for(int l=0;l<n;l++)
+            ++a[l];
+          break;
+        case 9: /* LOOP */
+          // Enter the loop if 'a' is nonzero in every lane, skip past the
+          // matching REP if it is zero in every lane, and otherwise follow
+          // the majority and drop the rest
+          z = 0;
+          for(int l=0;l<n;l++) {
+            if (a[l] == 0)
+              ++z;
+          }
+          if ((z > 0)&&(z < n))
+            n = keepLanes(a,p,memory,id,n,((z * 2) >= n));
+          if (a[0] == 0)
+            i = jump[i];
+          else stack[sp++] = i;
+          break;
+        case 10: /* MUL */
+          for(int l=0;l<n;l++)
+            a[l] *= load(memory[l],p[l]);
+          break;
+        case 11: /* OR */
+          for(int l=0;l<n;l++)
+            a[l] |= load(memory[l],p[l]);
+          break;
+        case 12: /* READ */
+        case 19: /* WRITE */
+          n = 0;
+          break;
+        case 13: /* REP */
+          if (sp > 0) {
+            z = 0;
+            for(int l=0;l<n;l++) {
+              if (a[l] == 0)
+                ++z;
+            }
+            if ((z > 0)&&(z < n))
+              n = keepLanes(a,p,memory,id,n,((z * 2) >= n));
+            if (a[0] != 0) {
+              i = stack[--sp]-1;
+              continue;
+            } else --sp;
+          }
+          break;
+        case 15: /* SHL */
+          for(int l=0;l<n;l++)
+            a[l] <<= 1;
+          break;
+        case 16: /* SHR */
+          for(int l=0;l<n;l++)
+            a[l] >>= 1;
+          break;
+        case 17: /* STA */
+          for(int l=0;l<n;l++) {
+            mv = p[l];
+            if (mv >= 0) {
+              if (mv < memory[l].length)
+                memory[l][mv] = a[l];
+              else memory[l][mv % memory[l].length] = a[l];
+            }
+            a[l] = 0;
+          }
+          break;
+        case 18: /* STOP */
+          for(int l=0;l<n;l++)
+            a[l] = p[l] = 0;
+          i = jump[i];
+          break;
+        case 20: /* XOR */
+          for(int l=0;l<n;l++)
+            a[l] ^= load(memory[l],p[l]);
+          break;
+
+        // Superinstructions (see Program)
+        case 21: /* INC/DEC run */
+          mv = arg[i];
+          for(int l=0;l<n;l++)
+            a[l] += mv;
+          ictr += jump[i] - i;
+          i = jump[i];
+          break;
+        case 22: /* FWD/BACK run */
+          mv = arg[i];
+          for(int l=0;l<n;l++)
+            p[l] += mv;
+          ictr += jump[i] - i;
+          i = jump[i];
+          break;
+        case 23: /* SHL run */
+          mv = arg[i];
+          for(int l=0;l<n;l++)
+            a[l] = ((mv < 32) ? (a[l] << mv) : 0);
+          ictr += jump[i] - i;
+          i = jump[i];
+          break;
+        case 24: /* SHR run */
+          mv = ((arg[i] < 31) ? arg[i] : 31);
+          for(int l=0;l<n;l++)
+            a[l] >>= mv;
+          ictr += jump[i] - i;
+          i = jump[i];
+          break;
+        case 25: /* STA at an offset from p */
+          for(int l=0;l<n;l++) {
+            mv = p[l] + arg[i];
+            if (mv >= 0) {
+              if (mv < memory[l].length)
+                memory[l][mv] = a[l];
+              else memory[l][mv % memory[l].length] = a[l];
+            }
+            a[l] = 0;
+          }
+          ictr += jump[i] - i;
+          i = jump[i];
+          break;
+      }
+    }
+
+    // A run at the end can take the count past the budget
+    if (ictr > budget)
+      n = 0;
+    for(int l=0;l<n;l++)
+      instructions[id[l]] = ictr;
+    return n;
+  }
+
+  /**
+   * Internal method to drop the lanes whose 'a' is zero or nonzero
+   *
+   * @param a Accumulators
+   * @param p Pointers
+   * @param memory Memories
+   * @param id Original lane numbers
+   * @param n Number of lanes
+   * @param zero Keep the lanes whose 'a' is zero? (otherwise nonzero)
+   * @return Number of lanes left
+   */
+  private static int keepLanes(int[] a,int[] p,int[][] memory,int[] id,int n,boolean zero)
+  {
+    int k = 0;
+    for(int l=0;l<n;l++) {
+      if ((a[l] == 0) == zero) {
+        if (k != l) {
+          // Swap so dropped rows are not lost to the caller
+          int t = a[k]; a[k] = a[l]; a[l] = t;
+          t = p[k]; p[k] = p[l]; p[l] = t;
+          t = id[k]; id[k] = id[l]; id[l] = t;
+          int[] m = memory[k]; memory[k] = memory[l]; memory[l] = m;
+        }
+        ++k;
+      }
+    }
+    return k;
+  }
+
+  /**
+   * Internal method to read the value at a pointer for the lockstep interpreter
+   *
+   * @param memory Cell state memory
+   * @param p Pointer (negative values read genome codons)
+   * @return Value
+   */
+  private int load(int[] memory,int p)
+  {
+    if (p >= 0)
+      return ((p < memory.length) ? memory[p] : memory[p % memory.length]);
+
+    // Pointers < 0 read genome codons at ((abs(p)-1) % genomeSize)
+    int mv = (((p == -2147483648) ? 2147483647 : Math.abs(p))-1) % genomeSize;
+    return (bits()[mv / 5] >> (24-(6*(mv % 5)))) & TOP_6_INT_BITS;
+  }
+
+  /**
+   * <p>Executes this genome directly from its packed bits</p>
+   *
+   * <p>This is the original interpreter, which decodes each codon from
+   * genomeBits as it goes.  It is the first execution tier, since for a
+   * genome that only runs a few times it is cheaper than decoding.  It
+   * charges energy for each instruction as it runs, and is the reference
+   * for the batched charging done by the other tiers.</p>
+   *
+   * @param input Input channels or null for none
+   * @param output Universe to send output to or null for none
+   * @param cell Cell being executed or null to not charge energy
+   * @param memory Cell state memory
+   * @return Number of instructions executed
+   * @throws DeathException Cell died during execution
+   */
+  int executePacked(IntegerInput[] input,Universe output,Cell cell,int[] memory)
+    throws DeathException
+  {
+    // Packed bits (read once, since the field is volatile)
+    int[] genomeBits = bits();
+
     // State of virtual machine
     int a = 0;
     int p = 0;
@@ -789,6 +2507,10 @@ public class RegisterMachineGenome implements Genome
     if (loopStack.stack.length < (genomeSize*2))
       loopStack.stack = new int[genomeSize*2];
 
+    // Start with an empty stack so frames left over from a previous
+    // execution on this thread (e.g. unmatched LOOPs) are never popped
+    loopStack.stackPtr = 0;
+
     // Execute genome by stepping through bitmap six-bits by six-bits
     int bptr = 0;
     int pos = 0;
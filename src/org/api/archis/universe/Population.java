@@ -0,0 +1,313 @@
+package org.api.archis.universe;
+
+import java.util.*;
+
+import org.api.archis.life.*;
+
+/**
+ * <p>Contiguous store of the living cells in a universe</p>
+ *
+ * <p>Cells are kept in a flat array alongside primitive columns holding
+ * each cell's id, energy, age, generation, genome, and state memory.  The
+ * columns are a snapshot of each cell as of when it was added or last
+ * executed, so they can be scanned without touching the cell objects.
+ * Code that needs the live value (e.g. after changing a cell's energy)
+ * should ask the cell itself.</p>
+ *
+ * <p>Cells that die during a tick are not removed one at a time; their
+ * slots are cleared and the store is compacted in one pass after all
+ * cells have executed.  Between ticks, indexes 0 through size()-1 always
+ * refer to cells that were alive at the end of their last execution.</p>
+ *
+ * <p>Iterate with a plain index loop:</p>
+ *
+ * <pre>
+ * Population p = universe.populationStore();
+ * for(int i=0,s=p.size();i&lt;s;i++) {
+ *   Cell c = p.cell(i);
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>Index-based access is only meaningful between ticks (from within
+ * preTickNotify or postTickNotify, or while the simulation is paused).</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class Population
+{
+  // Initial capacity of a new store
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // Cells and per-cell columns
+  private Cell[] cells;
+  private long[] ids;
+  private int[] energy;
+  private long[] age;
+  private long[] generation;
+  private Genome[] genomes;
+  private int[][] stateMemory;
+
+  // Number of occupied slots
+  private int size;
+
+  /**
+   * An iterator over a snapshot of the store's slots that skips cleared slots
+   */
+  private static class PopulationIterator implements Iterator
+  {
+    private Cell[] cells;
+    private int size,ptr;
+
+    public PopulationIterator(Cell[] cells,int size)
+    {
+      this.cells = cells;
+      this.size = size;
+      ptr = 0;
+    }
+
+    public boolean hasNext()
+    {
+      while ((ptr < size)&&(cells[ptr] == null))
+        ++ptr;
+      return (ptr < size);
+    }
+
+    public Object next()
+      throws NoSuchElementException
+    {
+      if (hasNext())
+        return cells[ptr++];
+      throw new NoSuchElementException();
+    }
+
+    public void remove()
+      throws UnsupportedOperationException
+    {
+      throw new UnsupportedOperationException("remove() not supported, use kill() method of cells");
+    }
+  }
+
+  /**
+   * Constructs a new empty population store
+   */
+  Population()
+  {
+    size = 0;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Internal method to (re)allocate columns with a given capacity
+   *
+   * @param capacity New capacity (must be at least size)
+   */
+  private void allocate(int capacity)
+  {
+    Cell[] c = new Cell[capacity];
+    long[] id = new long[capacity];
+    int[] e = new int[capacity];
+    long[] a = new long[capacity];
+    long[] g = new long[capacity];
+    Genome[] gn = new Genome[capacity];
+    int[][] sm = new int[capacity][];
+    if (size > 0) {
+      System.arraycopy(cells,0,c,0,size);
+      System.arraycopy(ids,0,id,0,size);
+      System.arraycopy(energy,0,e,0,size);
+      System.arraycopy(age,0,a,0,size);
+      System.arraycopy(generation,0,g,0,size);
+      System.arraycopy(genomes,0,gn,0,size);
+      System.arraycopy(stateMemory,0,sm,0,size);
+    }
+    cells = c;
+    ids = id;
+    energy = e;
+    age = a;
+    generation = g;
+    genomes = gn;
+    stateMemory = sm;
+  }
+
+  /**
+   * Appends a cell to the end of the store
+   *
+   * @param cell Cell to add
+   */
+  void add(Cell cell)
+  {
+    if (size >= cells.length)
+      allocate(cells.length * 2);
+    cells[size] = cell;
+    ids[size] = cell.id();
+    genomes[size] = cell.genome();
+    stateMemory[size] = cell.stateMemory();
+    update(size++);
+  }
+
+  /**
+   * <p>Refreshes the mutable columns of a slot from its cell</p>
+   *
+   * <p>This is called by the thread executing the cell.  Each thread only
+   * touches its own range of slots, so no locking is needed.</p>
+   *
+   * @param index Slot index
+   */
+  void update(int index)
+  {
+    Cell c = cells[index];
+    energy[index] = c.energy();
+    age[index] = c.age();
+    generation[index] = c.generation();
+    genomes[index] = c.genome();
+  }
+
+  /**
+   * <p>Clears a slot whose cell has died (it is removed at the next compact())</p>
+   *
+   * <p>This releases the cell's genome (see Cell.releaseGenome()).</p>
+   *
+   * @param index Slot index
+   */
+  void clear(int index)
+  {
+    cells[index].releaseGenome();
+    cells[index] = null;
+  }
+
+  /**
+   * <p>Removes all cleared slots in a single pass</p>
+   *
+   * <p>The relative order of surviving cells is preserved.</p>
+   *
+   * @return Number of slots removed
+   */
+  int compact()
+  {
+    int w = 0;
+    for(int r=0;r<size;r++) {
+      if (cells[r] != null) {
+        if (w != r) {
+          cells[w] = cells[r];
+          ids[w] = ids[r];
+          energy[w] = energy[r];
+          age[w] = age[r];
+          generation[w] = generation[r];
+          genomes[w] = genomes[r];
+          stateMemory[w] = stateMemory[r];
+        }
+        ++w;
+      }
+    }
+
+    // Drop references so dead cells and genomes can be collected
+    for(int i=w;i<size;i++) {
+      cells[i] = null;
+      genomes[i] = null;
+      stateMemory[i] = null;
+    }
+
+    int removed = size - w;
+    size = w;
+    return removed;
+  }
+
+  /**
+   * Returns an iterator over the cells in this store
+   *
+   * @return Iterator over cells (remove() is not supported)
+   */
+  Iterator iterator()
+  {
+    return new PopulationIterator(cells,size);
+  }
+
+  /**
+   * Gets the number of cells in this store
+   *
+   * @return Number of cells
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Gets the cell at a given index
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell
+   */
+  public Cell cell(int index)
+  {
+    return cells[index];
+  }
+
+  /**
+   * Gets the id of the cell at a given index
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell id
+   */
+  public long id(int index)
+  {
+    return ids[index];
+  }
+
+  /**
+   * Gets the energy of the cell at a given index as of its last execution
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell energy
+   */
+  public int energy(int index)
+  {
+    return energy[index];
+  }
+
+  /**
+   * Gets the age of the cell at a given index as of its last execution
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell age
+   */
+  public long age(int index)
+  {
+    return age[index];
+  }
+
+  /**
+   * Gets the generation of the cell at a given index
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell generation
+   */
+  public long generation(int index)
+  {
+    return generation[index];
+  }
+
+  /**
+   * Gets the genome of the cell at a given index as of its last execution
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell genome
+   */
+  public Genome genome(int index)
+  {
+    return genomes[index];
+  }
+
+  /**
+   * Gets the state memory of the cell at a given index
+   *
+   * @param index Index from 0 to size()-1
+   * @return Cell state memory
+   */
+  public int[] stateMemory(int index)
+  {
+    return stateMemory[index];
+  }
+}
@@ -1,9 +1,18 @@
 package org.api.archis.universe;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RecursiveAction;
+import java.text.NumberFormat;
+import java.text.DecimalFormat;
 
 import org.api.archis.*;
 import org.api.archis.life.*;
+import org.api.archis.life.vms.LockstepExecutor;
+import org.api.archis.life.vms.RegisterMachineGenome;
 import org.api.archis.utils.*;
 
 /**
@@ -21,6 +30,42 @@ import org.api.archis.utils.*;
 
 public class Universe
 {
+  /**
+   * Execution mode: each thread executes a fixed batch of cells
+   */
+  public static final int EXECUTION_MODE_BATCHED = 0;
+
+  /**
+   * Execution mode: cells are split into small chunks that idle threads can steal
+   */
+  public static final int EXECUTION_MODE_WORK_STEALING = 1;
+
+  // Minimum number of cells in a work-stealing chunk
+  private static final int WORK_STEALING_MIN_CHUNK = 8;
+
+  // Number of universes created and not yet destroyed in this JVM (locked)
+  private static int[] liveUniverses = new int[1];
+
+  // Number of cells prepared at once for lockstep execution
+  private static final int LOCKSTEP_BLOCK = 1024;
+
+  // Per-worker statistics: each worker slot occupies STATS_STRIDE longs
+  // (128 bytes) so that slots written by different threads never share a
+  // cache line.  These are offsets within a slot.
+  private static final int STATS_STRIDE = 16;
+  private static final int STAT_CELL_ENERGY = 0;
+  private static final int STAT_GENOME_SIZE_SUM = 1;
+  private static final int STAT_MAX_GENOME_SIZE = 2;
+  private static final int STAT_MIN_GENOME_SIZE = 3;
+  private static final int STAT_AGE_SUM = 4;
+  private static final int STAT_MAX_GENERATION = 5;
+  private static final int STAT_MIN_GENERATION = 6;
+  private static final int STAT_STATIC = 7;
+  private static final int STAT_DEATHS = 8;
+  private static final int STAT_IDLE = 9;
+  private static final int STAT_LOCKSTEP = 10;
+  private static final int STAT_TIER_INSTRUCTIONS = 11; /* one per tier */
+
   // Conditions and changes
   private Condition[] conditions;
   private Set newConditions,removeConditions;
@@ -35,21 +80,55 @@ public class Universe
   // Random source (from simulation)
   private RandomSource randomSource;
 
-  // Cells (grouped into execution batches)
-  private LinkedList[] cells;
+  // Cells
+  private Population cells;
 
-  // New cells for current run
-  private ArrayList newCells,newCellParents;
+  // Number of execution batches (each thread executes a contiguous range)
+  private int nbatches;
 
-  // Object to notify threads to start
-  private Object startNotify;
+  // New cells for current run: one buffer per worker slot (0 is the
+  // thread running tick(), then execution agents or pool workers) and a
+  // locked buffer for births from any other thread
+  private BirthBuffer[] birthBuffers;
+  private BirthBuffer externalBirths;
+
+  // Thread currently running tick() or null if none
+  private volatile Thread tickThread;
+
+  // Phase of the tick births are being added in (clock * 3 + phase, where
+  // phase is 0 before, 1 during, and 2 after cell execution)
+  private volatile long birthEpoch;
+
+  // Per-cell random streams in deterministic mode (null otherwise)
+  private ThreadLocalRandomSource streamRandomSource;
+  private BirthBuffer deterministicBirths;
+
+  // Per-worker statistics accumulators (see STATS_STRIDE); the last slot
+  // is for threads that are not workers and is locked
+  private long[] workerStats;
+  private int externalStatsBase;
+
+  // Has this universe been destroyed?
+  private boolean destroyed;
 
   // Execution agents (null if only one)
   private MultiThreadedExecutionAgent[] threads;
 
-  // Number of threads currently running (used to wait for thread completion)
-  private volatile int threadsRunning;
-  private Object threadsRunningSync;
+  // Execution mode and work-stealing pool (null unless work-stealing)
+  private int executionMode;
+  private ForkJoinPool workStealingPool;
+
+  // Worker slots taken by work-stealing pool workers (locked, null unless
+  // work-stealing)
+  private boolean[] workStealingSlotUsed;
+
+  // Pool for parallel work between ticks with fixed batches (created on
+  // first use, see invoke())
+  private ForkJoinPool helperPool;
+
+  // Phaser synchronizing the start and join phases of each tick between
+  // this thread and the execution agents
+  private Phaser tickPhaser;
 
   // Simulation clock
   private long clock;
@@ -57,9 +136,26 @@ public class Universe
   // Probabilities for 'static' in output to channels
   private float staticProbability;
 
+  // Static samplers: one per worker slot and a locked one for other threads
+  private RareEventSampler[] staticSamplers;
+  private RareEventSampler externalStaticSampler;
+
+  // Execute cells sharing a genome in lockstep?  Lockstep executors: one
+  // per worker slot (other threads make their own)
+  private volatile boolean lockstepExecution;
+
+  // Executions before register machine genomes are decoded or compiled
+  // in this universe (see setTierThresholds())
+  private volatile int decodeThreshold;
+  private volatile int compileThreshold;
+
+  // Detect endless loops in register machine genomes executed in this
+  // universe? (see setCycleDetection())
+  private volatile boolean cycleDetection;
+  private LockstepExecutor[] lockstepExecutors;
+
   // Statistics
   private volatile long totalCellEnergy;
-  private volatile long totalBirths;
   private volatile long totalIntroducedBirths;
   private volatile long totalNaturalBirths;
   private volatile long totalDeaths;
@@ -71,6 +167,9 @@ public class Universe
   private volatile long ageSum;
   private volatile long totalFailedBirths;
   private volatile int totalStatic;
+  private volatile int totalIdle;
+  private volatile int totalLockstep;
+  private volatile long[] tierInstructions;
 
   // Simulation
   private Simulation simulation;
@@ -79,58 +178,107 @@ public class Universe
   private long stopPoint;
 
   /**
-   * An iterator that iterates over all the cells in the universe
+   * <p>Buffer of new cells and their parents added by a single thread</p>
    *
-   * @author Adam Ierymenko
-   * @version 1.0
+   * <p>Each execution worker has its own buffer so that births do not
+   * contend on a shared lock.  Buffers are drained by the tick thread
+   * after all workers have joined.</p>
    */
-  private class CellIterator implements Iterator
+  private static class BirthBuffer
   {
-    private int ca;
-    private Iterator ci;
+    public Cell[] cells;
+    public Cell[] parents;
+    public long[] epochs;
+    public int size;
 
-    public CellIterator()
+    public BirthBuffer()
     {
-      ca = 1;
-      ci = cells[0].iterator();
+      cells = new Cell[256];
+      parents = new Cell[256];
+      epochs = new long[256];
+      size = 0;
     }
 
-    public boolean hasNext()
+    public void add(Cell parent,Cell newCell,long epoch)
     {
-      if (ci.hasNext())
-        return true;
-      else if (ca < cells.length)
-        return (cells[ca].size() > 0);
-      else return false;
+      if (size >= cells.length) {
+        Cell[] c = new Cell[cells.length * 2];
+        Cell[] p = new Cell[c.length];
+        long[] e = new long[c.length];
+        System.arraycopy(cells,0,c,0,size);
+        System.arraycopy(parents,0,p,0,size);
+        System.arraycopy(epochs,0,e,0,size);
+        cells = c;
+        parents = p;
+        epochs = e;
+      }
+      cells[size] = newCell;
+      epochs[size] = epoch;
+      parents[size++] = parent;
+    }
+
+    public void addAll(BirthBuffer b)
+    {
+      for(int i=0;i<b.size;i++)
+        add(b.parents[i],b.cells[i],b.epochs[i]);
     }
 
-    public Object next()
-      throws NoSuchElementException
+    /**
+     * Stable sorts births by epoch and then by parent id (no parent first)
+     */
+    public void sort()
     {
-      if (ci.hasNext())
-        return ci.next();
-      else if (ca < cells.length) {
-        ci = cells[ca++].iterator();
-        return ci.next();
-      } else throw new NoSuchElementException();
+      Integer[] order = new Integer[size];
+      for(int i=0;i<size;i++)
+        order[i] = Integer.valueOf(i);
+      Arrays.sort(order,new Comparator() {
+        public int compare(Object o1,Object o2)
+        {
+          int a = ((Integer)o1).intValue();
+          int b = ((Integer)o2).intValue();
+          if (epochs[a] != epochs[b])
+            return ((epochs[a] < epochs[b]) ? -1 : 1);
+          long pa = ((parents[a] == null) ? 0L : parents[a].id());
+          long pb = ((parents[b] == null) ? 0L : parents[b].id());
+          return ((pa < pb) ? -1 : ((pa == pb) ? 0 : 1));
+        }
+      });
+      Cell[] c = new Cell[cells.length];
+      Cell[] p = new Cell[cells.length];
+      long[] e = new long[cells.length];
+      for(int i=0;i<size;i++) {
+        int x = order[i].intValue();
+        c[i] = cells[x];
+        p[i] = parents[x];
+        e[i] = epochs[x];
+      }
+      cells = c;
+      parents = p;
+      epochs = e;
     }
 
-    public void remove()
-      throws UnsupportedOperationException
+    public void clear()
     {
-      throw new UnsupportedOperationException();
+      for(int i=0;i<size;i++) {
+        cells[i] = null;
+        parents[i] = null;
+      }
+      size = 0;
     }
   }
 
   /**
-   * Internal thread to execute cells concurrently
+   * <p>Internal thread to execute cells concurrently</p>
+   *
+   * <p>Each tick has three phases: start, execute, and join.  The agent
+   * waits on the tick phaser for the start phase, executes its batch, and
+   * then arrives at the phaser again so the universe knows when every batch
+   * is done.</p>
    */
   private class MultiThreadedExecutionAgent extends Thread
   {
     public volatile boolean die;
-    public volatile boolean running;
     public int batch;
-    public Object endNotify;
     public long time;
 
     public MultiThreadedExecutionAgent(int batch)
@@ -139,87 +287,199 @@ public class Universe
       super.setDaemon(true);
       this.batch = batch;
       die = false;
-      running = false;
-      endNotify = new Object();
       time = 0L;
+      tickPhaser.register();
       super.start();
     }
 
     public void run()
     {
       for(;;) {
-        if (!running) {
-          try {
-            synchronized(startNotify) {
-              startNotify.wait(1000L);
-            }
-          } catch (InterruptedException e) {}
+        // Start phase: wait for the universe to begin a tick
+        tickPhaser.arriveAndAwaitAdvance();
+        if (die) {
+          tickPhaser.arriveAndDeregister();
+          break;
         }
 
-        if (die)
-          break;
-        else if (running) {
-          long _st = System.currentTimeMillis();
+        // Execute phase
+        long _st = System.currentTimeMillis();
+        try {
           executeCellBatch(batch);
-          time = System.currentTimeMillis() - _st;
+        } catch (Throwable t) {
+          t.printStackTrace();
+        }
+        time = System.currentTimeMillis() - _st;
 
-          running = false;
-          synchronized(threadsRunningSync) {
-            --threadsRunning;
-          }
+        // Join phase: report completion of this batch
+        tickPhaser.arriveAndAwaitAdvance();
+      }
+    }
+  }
 
-          synchronized(endNotify) {
-            endNotify.notifyAll();
-          }
-        }
+  /**
+   * <p>Work-stealing task to execute a range of cells</p>
+   *
+   * <p>Ranges larger than the chunk size are split in half so that idle
+   * threads can steal the other half.</p>
+   */
+  private class CellChunkTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private int start,end,chunkSize;
+
+    public CellChunkTask(int start,int end,int chunkSize)
+    {
+      this.start = start;
+      this.end = end;
+      this.chunkSize = chunkSize;
+    }
+
+    protected void compute()
+    {
+      if ((end - start) <= chunkSize) {
+        executeCellRange(start,end,workerSlot());
+      } else {
+        int mid = start + ((end - start) / 2);
+        invokeAll(new CellChunkTask(start,mid,chunkSize),new CellChunkTask(mid,end,chunkSize));
       }
     }
   }
 
   /**
-   * Constructs a new universe
+   * Internal work-stealing pool worker with a worker slot of its own
+   */
+  private class WorkStealingWorker extends ForkJoinWorkerThread
+  {
+    public int slot;
+
+    public WorkStealingWorker(ForkJoinPool pool,int slot)
+    {
+      super(pool);
+      this.slot = slot;
+    }
+
+    protected void onTermination(Throwable exception)
+    {
+      releaseWorkStealingSlot(slot);
+      super.onTermination(exception);
+    }
+  }
+
+  /**
+   * <p>Internal factory for work-stealing pool workers</p>
+   *
+   * <p>Pool indexes of workers are not limited to the pool's parallelism,
+   * so instead each worker is given a free worker slot when it is created.
+   * The pool may start spare workers while others wait to join tasks, so
+   * there are twice as many slots as threads.  If they are all taken no
+   * worker is created, so every worker always has a slot.</p>
+   */
+  private class WorkStealingThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+  {
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+    {
+      int slot = claimWorkStealingSlot();
+      return ((slot < 0) ? null : new WorkStealingWorker(pool,slot));
+    }
+  }
+
+  /**
+   * Constructs a new universe using fixed per-thread cell batches
    *
    * @param nthreads Number of concurrent threads to execute
    * @param simulation Simulation this universe is running within
    */
   public Universe(int nthreads,Simulation simulation)
   {
-    startNotify = new Object();
-
-    cells = new LinkedList[nthreads];
-    for(int i=0;i<nthreads;i++)
-      cells[i] = new LinkedList();
+    this(nthreads,EXECUTION_MODE_BATCHED,simulation);
+  }
 
-    if (nthreads > 1) {
-      // Start n-1 threads (this thread will function as thread 0)
+  /**
+   * Constructs a new universe
+   *
+   * @param nthreads Number of concurrent threads to execute
+   * @param executionMode Execution mode (one of the EXECUTION_MODE constants)
+   * @param simulation Simulation this universe is running within
+   * @throws IllegalArgumentException Invalid execution mode
+   */
+  public Universe(int nthreads,int executionMode,Simulation simulation)
+    throws IllegalArgumentException
+  {
+    if ((executionMode != EXECUTION_MODE_BATCHED)&&(executionMode != EXECUTION_MODE_WORK_STEALING))
+      throw new IllegalArgumentException("Unrecognized execution mode");
+    this.executionMode = executionMode;
+
+    // Work-stealing assigns chunks at run time instead of fixed batches
+    nbatches = (((executionMode == EXECUTION_MODE_WORK_STEALING)||(nthreads < 1)) ? 1 : nthreads);
+    cells = new Population();
+
+    if ((executionMode == EXECUTION_MODE_WORK_STEALING)&&(nthreads > 1)) {
+      // Slot 0 is the thread running tick()
+      workStealingSlotUsed = new boolean[(nthreads * 2) + 1];
+      workStealingSlotUsed[0] = true;
+      workStealingPool = new ForkJoinPool(nthreads,new WorkStealingThreadFactory(),null,false);
+      threads = null;
+    } else if (nthreads > 1) {
+      // Start n-1 threads (this thread will function as thread 0 and is
+      // the first party registered with the phaser)
+      tickPhaser = new Phaser(1);
       threads = new MultiThreadedExecutionAgent[nthreads-1];
       for(int i=0;i<(nthreads-1);i++)
         threads[i] = new MultiThreadedExecutionAgent(i+1);
     } else threads = null;
-    threadsRunningSync = new Object();
-    threadsRunning = 0;
 
     this.simulation = simulation;
     randomSource = simulation.randomSource();
-    newCells = new ArrayList(65536);
-    newCellParents = new ArrayList(65536);
+    destroyed = false;
+    synchronized(liveUniverses) {
+      ++liveUniverses[0];
+    }
+    birthBuffers = new BirthBuffer[((workStealingPool == null) ? nbatches : workStealingSlotUsed.length)];
+    for(int i=0;i<birthBuffers.length;i++)
+      birthBuffers[i] = new BirthBuffer();
+    externalBirths = new BirthBuffer();
+    if (simulation.isDeterministic()) {
+      streamRandomSource = (ThreadLocalRandomSource)simulation.randomSource();
+      deterministicBirths = new BirthBuffer();
+    } else streamRandomSource = null;
+    externalStatsBase = statsBase(birthBuffers.length);
+    workerStats = new long[externalStatsBase + (STATS_STRIDE * 2)];
+    for(int i=0;i<=birthBuffers.length;i++)
+      resetWorkerStats(workerStats,statsBase(i));
     ioChannelAssignments = new IOHandler[Archis.CHANNEL_COUNT];
-    newProbes = new HashSet(32,0.75F);
-    newConditions = new HashSet(32,0.75F);
-    removeProbes = new HashSet(32,0.75F);
-    removeConditions = new HashSet(32,0.75F);
+    // Linked sets keep plugins in the order they were added so that
+    // callbacks happen in the same order from run to run
+    newProbes = new LinkedHashSet(32,0.75F);
+    newConditions = new LinkedHashSet(32,0.75F);
+    removeProbes = new LinkedHashSet(32,0.75F);
+    removeConditions = new LinkedHashSet(32,0.75F);
     probes = new Probe[0];
     conditions = new Condition[0];
 
     staticProbability = 0.0005F;
+    staticSamplers = new RareEventSampler[birthBuffers.length];
+    for(int i=0;i<staticSamplers.length;i++)
+      staticSamplers[i] = new RareEventSampler(randomSource,(double)staticProbability);
+    externalStaticSampler = new RareEventSampler(randomSource,(double)staticProbability);
+
+    lockstepExecution = false;
+    decodeThreshold = RegisterMachineGenome.getDecodeThreshold();
+    compileThreshold = RegisterMachineGenome.getCompileThreshold();
+    cycleDetection = RegisterMachineGenome.getCycleDetection();
+    lockstepExecutors = new LockstepExecutor[birthBuffers.length];
+    for(int i=0;i<lockstepExecutors.length;i++)
+      lockstepExecutors[i] = new LockstepExecutor(this);
 
     totalCellEnergy = 0L;
-    totalBirths = 0L;
     totalIntroducedBirths = 0L;
     totalNaturalBirths = 0L;
     totalFailedBirths = 0L;
     totalDeaths = 0L;
     totalStatic = 0;
+    totalIdle = 0;
+    totalLockstep = 0;
     maxGeneration = 0L;
     maxGenerationThisRun = 0L;
   }
@@ -243,21 +503,82 @@ public class Universe
    */
   public Iterator populationIterator()
   {
-    return new CellIterator();
+    return cells.iterator();
+  }
+
+  /**
+   * <p>Returns the contiguous store of cells in the population</p>
+   *
+   * <p>This is the fast way for conditions and probes to scan the whole
+   * population; see Population for details.</p>
+   *
+   * @return Population store
+   */
+  public Population populationStore()
+  {
+    return cells;
   }
 
   /**
-   * Destroys this universe and kills all associated threads (this should be called explicitly!)
+   * <p>Destroys this universe and kills all associated threads (this should be called explicitly!)</p>
+   *
+   * <p>This also gives back the pooled genomes of every cell in the
+   * universe and every birth not yet added, and empties the genome pool
+   * when the last universe in the JVM is destroyed.</p>
    */
-  public void destroy()
+  public synchronized void destroy()
   {
+    if (workStealingPool != null) {
+      workStealingPool.shutdownNow();
+      workStealingPool = null;
+    }
+    if (helperPool != null) {
+      helperPool.shutdownNow();
+      helperPool = null;
+    }
     if (threads != null) {
-      for(int i=0;i<threads.length;i++) {
+      // Release agents from the start phase so they see die and deregister
+      for(int i=0;i<threads.length;i++)
         threads[i].die = true;
-        threads[i].interrupt();
-      }
+      tickPhaser.arriveAndDeregister();
       threads = null;
     }
+
+    if (!destroyed) {
+      destroyed = true;
+
+      for(int i=0;i<cells.size();i++) {
+        if (cells.cell(i) != null)
+          cells.clear(i);
+      }
+      cells.compact();
+      for(int i=0;i<birthBuffers.length;i++)
+        releaseBirths(birthBuffers[i]);
+      synchronized(externalBirths) {
+        releaseBirths(externalBirths);
+      }
+      if (deterministicBirths != null)
+        releaseBirths(deterministicBirths);
+
+      // Anything still pooled once every universe is gone was leaked
+      // (e.g. by a cell a plugin kept), so let it be garbage collected
+      synchronized(liveUniverses) {
+        if (--liveUniverses[0] == 0)
+          RegisterMachineGenome.genomePool().clear();
+      }
+    }
+  }
+
+  /**
+   * Internal method to give back the genomes of births that will never be added
+   *
+   * @param births Buffer to empty
+   */
+  private static void releaseBirths(BirthBuffer births)
+  {
+    for(int i=0;i<births.size;i++)
+      births.cells[i].releaseGenome();
+    births.clear();
   }
 
   /**
@@ -448,74 +769,471 @@ public class Universe
   }
 
   /**
-   * Attempts to add a cell to the universe (may be rejected by conditions)
+   * <p>Attempts to add a cell to the universe (may be rejected by conditions)</p>
+   *
+   * <p>New cells are added at the start of the next tick, or during this
+   * tick if called before cells are executed (e.g. from preTickNotify).
+   * Cells added by execution threads go into that thread's own buffer
+   * without locking.</p>
    *
    * @param parent Parent or null if none (random or synthetic)
    * @param newCell New cell
    */
   public void addCell(Cell parent,Cell newCell)
   {
-    synchronized(newCells) {
-      newCells.add(newCell);
-      newCellParents.add(parent);
+    int slot = workerSlot();
+    if (slot >= 0)
+      birthBuffers[slot].add(parent,newCell,birthEpoch);
+    else {
+      synchronized(externalBirths) {
+        externalBirths.add(parent,newCell,birthEpoch);
+      }
     }
   }
 
   /**
-   * Internal method to execute a given batch of cells
+   * <p>Gets the worker slot of the current thread</p>
    *
-   * @param batch Batch (thread) number
+   * <p>Slot 0 is the thread running tick(), followed by the execution
+   * agents or work-stealing pool workers.  No two threads have the same
+   * slot at once, so conditions can keep per-thread state in an array
+   * indexed by slot and read it without locking once cells are done
+   * executing (e.g. in postTickNotify).  Other threads get -1.</p>
+   *
+   * @return Worker slot or -1 if the current thread is not a worker
    */
-  private void executeCellBatch(int batch)
+  public int workerSlot()
+  {
+    Thread t = Thread.currentThread();
+    int slot = -1;
+    if (t == tickThread)
+      slot = 0;
+    else if (t instanceof MultiThreadedExecutionAgent) {
+      MultiThreadedExecutionAgent[] th = threads;
+      int b = ((MultiThreadedExecutionAgent)t).batch;
+      if ((th != null)&&(th[b-1] == t))
+        slot = b;
+    } else if ((t instanceof WorkStealingWorker)&&(((WorkStealingWorker)t).getPool() == workStealingPool))
+      slot = ((WorkStealingWorker)t).slot;
+    return (((slot >= 0)&&(slot < birthBuffers.length)) ? slot : -1);
+  }
+
+  /**
+   * Gets the number of worker slots (see workerSlot())
+   *
+   * @return Number of slots
+   */
+  public int workerSlots()
+  {
+    return birthBuffers.length;
+  }
+
+  /**
+   * Internal method to claim a free worker slot for a new work-stealing worker
+   *
+   * @return Worker slot or -1 if all are taken
+   */
+  private int claimWorkStealingSlot()
+  {
+    synchronized(workStealingSlotUsed) {
+      for(int i=1;i<workStealingSlotUsed.length;i++) {
+        if (!workStealingSlotUsed[i]) {
+          workStealingSlotUsed[i] = true;
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Internal method to free the worker slot of a work-stealing worker that is exiting
+   *
+   * @param slot Worker slot
+   */
+  private void releaseWorkStealingSlot(int slot)
+  {
+    synchronized(workStealingSlotUsed) {
+      workStealingSlotUsed[slot] = false;
+    }
+  }
+
+  /**
+   * Internal method to get the offset of a worker slot in workerStats
+   *
+   * @param slot Worker slot
+   * @return Offset of slot's first statistic
+   */
+  private static int statsBase(int slot)
+  {
+    // Slot 0 starts one stride in to keep it off the array header's line
+    return ((slot + 1) * STATS_STRIDE);
+  }
+
+  /**
+   * Internal method to reset the per-tick statistics in a worker slot
+   *
+   * @param ws Statistics array
+   * @param base Offset of slot in ws
+   */
+  private static void resetWorkerStats(long[] ws,int base)
+  {
+    ws[base + STAT_CELL_ENERGY] = 0L;
+    ws[base + STAT_GENOME_SIZE_SUM] = 0L;
+    ws[base + STAT_MAX_GENOME_SIZE] = 0L;
+    ws[base + STAT_MIN_GENOME_SIZE] = 2147483647L;
+    ws[base + STAT_AGE_SUM] = 0L;
+    ws[base + STAT_MAX_GENERATION] = 0L;
+    ws[base + STAT_MIN_GENERATION] = Long.MAX_VALUE;
+    ws[base + STAT_STATIC] = 0L;
+    ws[base + STAT_IDLE] = 0L;
+    ws[base + STAT_LOCKSTEP] = 0L;
+    for(int t=0;t<RegisterMachineGenome.TIER_COUNT;t++)
+      ws[base + STAT_TIER_INSTRUCTIONS + t] = 0L;
+  }
+
+  /**
+   * Internal method to add statistics counted privately to the external slot
+   *
+   * @param ws Statistics array
+   * @param base Offset of statistics in ws
+   */
+  private void addExternalStats(long[] ws,int base)
+  {
+    synchronized(workerStats) {
+      int e = externalStatsBase;
+      workerStats[e + STAT_CELL_ENERGY] += ws[base + STAT_CELL_ENERGY];
+      workerStats[e + STAT_GENOME_SIZE_SUM] += ws[base + STAT_GENOME_SIZE_SUM];
+      workerStats[e + STAT_AGE_SUM] += ws[base + STAT_AGE_SUM];
+      workerStats[e + STAT_STATIC] += ws[base + STAT_STATIC];
+      workerStats[e + STAT_IDLE] += ws[base + STAT_IDLE];
+      workerStats[e + STAT_LOCKSTEP] += ws[base + STAT_LOCKSTEP];
+      for(int t=0;t<RegisterMachineGenome.TIER_COUNT;t++)
+        workerStats[e + STAT_TIER_INSTRUCTIONS + t] += ws[base + STAT_TIER_INSTRUCTIONS + t];
+      if (ws[base + STAT_MAX_GENOME_SIZE] > workerStats[e + STAT_MAX_GENOME_SIZE])
+        workerStats[e + STAT_MAX_GENOME_SIZE] = ws[base + STAT_MAX_GENOME_SIZE];
+      if (ws[base + STAT_MIN_GENOME_SIZE] < workerStats[e + STAT_MIN_GENOME_SIZE])
+        workerStats[e + STAT_MIN_GENOME_SIZE] = ws[base + STAT_MIN_GENOME_SIZE];
+      if (ws[base + STAT_MAX_GENERATION] > workerStats[e + STAT_MAX_GENERATION])
+        workerStats[e + STAT_MAX_GENERATION] = ws[base + STAT_MAX_GENERATION];
+      if (ws[base + STAT_MIN_GENERATION] < workerStats[e + STAT_MIN_GENERATION])
+        workerStats[e + STAT_MIN_GENERATION] = ws[base + STAT_MIN_GENERATION];
+    }
+  }
+
+  /**
+   * Internal method to increment a statistic in the current thread's slot
+   *
+   * @param stat Statistic offset within slot
+   */
+  private void incWorkerStat(int stat)
+  {
+    int slot = workerSlot();
+    if (slot >= 0)
+      ++workerStats[statsBase(slot) + stat];
+    else {
+      synchronized(workerStats) {
+        ++workerStats[externalStatsBase + stat];
+      }
+    }
+  }
+
+  /**
+   * <p>Counts instructions a genome ran in one of its execution tiers</p>
+   *
+   * <p>Genomes executed by this universe call this after each execution,
+   * and the counts are added to the current thread's worker slot like the
+   * other per-tick statistics.</p>
+   *
+   * @param tier Execution tier (e.g. RegisterMachineGenome.TIER_PACKED)
+   * @param instructions Number of instructions
+   */
+  public void countTierInstructions(int tier,long instructions)
+  {
+    int slot = workerSlot();
+    if (slot >= 0)
+      workerStats[statsBase(slot) + STAT_TIER_INSTRUCTIONS + tier] += instructions;
+    else {
+      synchronized(workerStats) {
+        workerStats[externalStatsBase + STAT_TIER_INSTRUCTIONS + tier] += instructions;
+      }
+    }
+  }
+
+  /**
+   * <p>Gets the number of instructions run last tick in an execution tier</p>
+   *
+   * <p>This only includes executions that did not end in death.</p>
+   *
+   * @param tier Execution tier (e.g. RegisterMachineGenome.TIER_PACKED)
+   * @return Number of instructions
+   */
+  public long tierInstructions(int tier)
+  {
+    long[] t = tierInstructions;
+    return ((t == null) ? 0L : t[tier]);
+  }
+
+  /**
+   * <p>Internal method to combine the per-worker statistics of this tick</p>
+   *
+   * <p>This is called by the tick thread after all workers have joined and
+   * resets the worker slots for the next tick.</p>
+   */
+  private void reduceWorkerStats()
   {
-    synchronized(cells[batch]) {
-      int gs;
-      long gen;
-      Object[] tmpp;
-      Cell cell;
+    long cellEnergy = 0L,gsSum = 0L,aSum = 0L,maxGen = 0L,minGen = Long.MAX_VALUE,stat = 0L,idle = 0L,lockstep = 0L;
+    long maxGs = 0L,minGs = 2147483647L;
+    long[] tiers = new long[RegisterMachineGenome.TIER_COUNT];
+    synchronized(workerStats) {
+      for(int base=statsBase(0);base<=externalStatsBase;base+=STATS_STRIDE) {
+        cellEnergy += workerStats[base + STAT_CELL_ENERGY];
+        gsSum += workerStats[base + STAT_GENOME_SIZE_SUM];
+        aSum += workerStats[base + STAT_AGE_SUM];
+        stat += workerStats[base + STAT_STATIC];
+        idle += workerStats[base + STAT_IDLE];
+        lockstep += workerStats[base + STAT_LOCKSTEP];
+        for(int t=0;t<RegisterMachineGenome.TIER_COUNT;t++)
+          tiers[t] += workerStats[base + STAT_TIER_INSTRUCTIONS + t];
+        if (workerStats[base + STAT_MAX_GENOME_SIZE] > maxGs)
+          maxGs = workerStats[base + STAT_MAX_GENOME_SIZE];
+        if (workerStats[base + STAT_MIN_GENOME_SIZE] < minGs)
+          minGs = workerStats[base + STAT_MIN_GENOME_SIZE];
+        if (workerStats[base + STAT_MAX_GENERATION] > maxGen)
+          maxGen = workerStats[base + STAT_MAX_GENERATION];
+        if (workerStats[base + STAT_MIN_GENERATION] < minGen)
+          minGen = workerStats[base + STAT_MIN_GENERATION];
+        resetWorkerStats(workerStats,base);
+      }
+    }
+    totalCellEnergy = cellEnergy;
+    genomeSizeSum = gsSum;
+    ageSum = aSum;
+    maxGenomeSize = (int)maxGs;
+    minGenomeSize = (int)minGs;
+    maxGenerationThisRun = maxGen;
+    minGenerationThisRun = minGen;
+    totalStatic = (int)stat;
+    totalIdle = (int)idle;
+    totalLockstep = (int)lockstep;
+    tierInstructions = tiers;
+  }
 
-      for(Iterator it=cells[batch].iterator();it.hasNext();) {
-        cell = (Cell)it.next();
+  /**
+   * Internal method to fold deaths counted by workers into the total
+   */
+  private void reduceDeaths()
+  {
+    long deaths = 0L;
+    synchronized(workerStats) {
+      for(int base=statsBase(0);base<=externalStatsBase;base+=STATS_STRIDE) {
+        deaths += workerStats[base + STAT_DEATHS];
+        workerStats[base + STAT_DEATHS] = 0L;
+      }
+    }
+    totalDeaths += deaths;
+  }
 
+  /**
+   * Internal method to add the cells in a birth buffer to the population
+   *
+   * @param births Buffer to drain
+   */
+  private void addBirths(BirthBuffer births)
+  {
+    // Size is re-read so births added by newCellNotify are also handled
+    for(int x=0;x<births.size;x++) {
+      Cell newCell = births.cells[x];
+      Cell parent = births.parents[x];
+
+      boolean cellok = true;
+      for(int i=0;i<conditions.length;i++) {
+        if (!conditions[i].newCellNotify(parent,newCell))
+          cellok = false;
+      }
+
+      if (cellok) {
+        for(int i=0;i<probes.length;i++)
+          probes[i].probeNewCell(parent,newCell);
+        if (parent != null)
+          ++totalNaturalBirths;
+        else ++totalIntroducedBirths;
+        cells.add(newCell);
+      } else {
+        newCell.releaseGenome();
+        ++totalFailedBirths;
+      }
+    }
+    births.clear();
+  }
+
+  /**
+   * <p>Internal method to restart the static sampler of the executing thread</p>
+   *
+   * <p>In deterministic mode this is done as each cell starts so that
+   * static in its output depends only on its own random stream.</p>
+   *
+   * @param slot Worker slot of executing thread or -1 if not a worker
+   */
+  private void restartStaticSampler(int slot)
+  {
+    if (slot >= 0)
+      staticSamplers[slot].restart();
+    else {
+      synchronized(externalStaticSampler) {
+        externalStaticSampler.setProbability((double)staticProbability);
+        externalStaticSampler.restart();
+      }
+    }
+  }
+
+  /**
+   * Internal method to execute a single cell
+   *
+   * @param cell Cell to execute
+   * @param ws Statistics array of executing thread
+   * @param stats Offset of executing thread's statistics in ws
+   * @param slot Worker slot of executing thread or -1 if not a worker
+   * @param lockstep Lockstep executor prepared for the cell's range or null
+   * @param index Index of cell in the population store
+   * @return True if cell is still alive after execution
+   */
+  private boolean executeCell(Cell cell,long[] ws,int stats,int slot,LockstepExecutor lockstep,int index)
+  {
+    int gs;
+    long gen;
+
+    if (cell.alive()) {
+      // In deterministic mode, everything random that happens to this cell
+      // this tick comes from its own stream
+      if (streamRandomSource != null) {
+        streamRandomSource.setStream(cell.id(),clock);
+        restartStaticSampler(slot);
+      }
+
+      try {
+        // Run conditions against cell
+        for(int i=0;i<conditions.length;i++)
+          conditions[i].preExecutionNotify(cell);
+
+        // Run cell if still alive (cells whose genomes are known to do
+        // nothing but burn a fixed number of instructions are charged for
+        // them without executing anything, and cells already executed in
+        // lockstep just take their results)
         if (cell.alive()) {
-          try {
-            // Run conditions against cell
-            for(int i=0;i<conditions.length;i++)
-              conditions[i].preExecutionNotify(cell);
-
-            // Run cell if still alive
-            if (cell.alive()) {
-              cell.heartbeat();
-
-              // Execute probes against cell
-              for(int i=0;i<probes.length;i++)
-                probes[i].probeScanCell(cell);
-
-              // Add cell's energy to total cell energy in universe
-              // if it survived.
-              totalCellEnergy += (long)cell.energy();
-
-              // Add to some sums used in calculating averages
-              genomeSizeSum += (long)(gs = cell.genome().size());
-              if (gs > maxGenomeSize)
-                maxGenomeSize = gs;
-              if (gs < minGenomeSize)
-                minGenomeSize = gs;
-              ageSum += cell.age();
-
-              // Update max and min living generation this run
-              if ((gen = cell.generation()) > maxGenerationThisRun)
-                maxGenerationThisRun = gen;
-              if (gen < minGenerationThisRun)
-                minGenerationThisRun = gen;
-            } else it.remove();
-          } catch (DeathException e) {
-            // Remove cell from batch on death
-            it.remove();
-          }
-        } else it.remove();
+          if (cell.idle()) {
+            cell.idleHeartbeat();
+            ++ws[stats + STAT_IDLE];
+          } else if ((lockstep != null)&&lockstep.heartbeat(cell,index))
+            ++ws[stats + STAT_LOCKSTEP];
+          else cell.heartbeat();
+
+          // Execute probes against cell
+          for(int i=0;i<probes.length;i++)
+            probes[i].probeScanCell(cell);
+
+          // Add cell's energy to total cell energy in universe
+          // if it survived.
+          ws[stats + STAT_CELL_ENERGY] += (long)cell.energy();
+
+          // Add to some sums used in calculating averages
+          ws[stats + STAT_GENOME_SIZE_SUM] += (long)(gs = cell.genome().size());
+          if (gs > ws[stats + STAT_MAX_GENOME_SIZE])
+            ws[stats + STAT_MAX_GENOME_SIZE] = gs;
+          if (gs < ws[stats + STAT_MIN_GENOME_SIZE])
+            ws[stats + STAT_MIN_GENOME_SIZE] = gs;
+          ws[stats + STAT_AGE_SUM] += cell.age();
+
+          // Update max and min living generation this run
+          if ((gen = cell.generation()) > ws[stats + STAT_MAX_GENERATION])
+            ws[stats + STAT_MAX_GENERATION] = gen;
+          if (gen < ws[stats + STAT_MIN_GENERATION])
+            ws[stats + STAT_MIN_GENERATION] = gen;
+
+          return true;
+        }
+      } catch (DeathException e) {
+        // Cell's slot is cleared by the caller on death
+      }
+    }
+    return false;
+  }
+
+  /**
+   * <p>Internal method to execute a range of cells in the population store</p>
+   *
+   * <p>Slots of cells that die are cleared and removed in bulk after all
+   * cells have executed.</p>
+   *
+   * <p>Threads that are not workers count statistics privately and add
+   * them to the external slot when done, so they never hold a lock while
+   * cells execute.</p>
+   *
+   * @param start Start index
+   * @param end End index (exclusive)
+   * @param slot Worker slot of executing thread or -1 if not a worker
+   */
+  private void executeCellRange(int start,int end,int slot)
+  {
+    long[] ws;
+    int stats;
+    LockstepExecutor lockstep = null;
+    if (slot >= 0) {
+      ws = workerStats;
+      stats = statsBase(slot);
+      if (lockstepExecution&&((end - start) >= LockstepExecutor.MIN_LANES))
+        lockstep = lockstepExecutors[slot];
+    } else {
+      ws = new long[STATS_STRIDE];
+      stats = 0;
+      resetWorkerStats(ws,stats);
+      if (lockstepExecution&&((end - start) >= LockstepExecutor.MIN_LANES))
+        lockstep = new LockstepExecutor(this);
+    }
+
+    // With lockstep execution, cells are prepared a block at a time so
+    // that they are still in cache when their turn comes
+    for(int b=start;b<end;b+=LOCKSTEP_BLOCK) {
+      int e = (((end - b) > LOCKSTEP_BLOCK) ? (b + LOCKSTEP_BLOCK) : end);
+      if (lockstep != null)
+        lockstep.prepare(cells,b,e);
+      for(int i=b;i<e;i++) {
+        if (executeCell(cells.cell(i),ws,stats,slot,lockstep,i))
+          cells.update(i);
+        else cells.clear(i);
       }
     }
+    if (slot < 0)
+      addExternalStats(ws,stats);
+  }
+
+  /**
+   * Internal method to execute a given batch of cells
+   *
+   * @param batch Batch (thread) number
+   */
+  private void executeCellBatch(int batch)
+  {
+    long n = (long)cells.size();
+    executeCellRange((int)((n * (long)batch) / (long)nbatches),(int)((n * (long)(batch + 1)) / (long)nbatches),batch);
+  }
+
+  /**
+   * <p>Internal method to execute all cells using the work-stealing pool</p>
+   *
+   * <p>The population is split into chunks small enough that a few long
+   * running genomes in one chunk do not leave the other threads idle.</p>
+   */
+  private void executeWorkStealing()
+  {
+    int n = cells.size();
+    if (n == 0)
+      return;
+
+    int chunkSize = n / (workStealingPool.getParallelism() * 32);
+    if (chunkSize < WORK_STEALING_MIN_CHUNK)
+      chunkSize = WORK_STEALING_MIN_CHUNK;
+    workStealingPool.invoke(new CellChunkTask(0,n,chunkSize));
   }
 
   /**
@@ -535,9 +1253,12 @@ public class Universe
       channel %= Archis.CHANNEL_COUNT;
 
     if (ioChannelAssignments[channel] != null) {
+      // Each write is an opportunity for static; the sampler skips ahead
+      // to the next one instead of drawing a random number every time
       boolean hadStatic = false;
-      while (randomSource.randomEvent(staticProbability)) {
-        ++totalStatic;
+      int slot = workerSlot();
+      while ((slot >= 0) ? staticSamplers[slot].event() : externalStaticEvent()) {
+        incWorkerStat(STAT_STATIC);
 
         // Insert extra value sometimes
         if (randomSource.randomBoolean())
@@ -555,6 +1276,19 @@ public class Universe
     }
   }
 
+  /**
+   * Internal method to sample static for a write from a thread that is not a worker
+   *
+   * @return True if there is static
+   */
+  private boolean externalStaticEvent()
+  {
+    synchronized(externalStaticSampler) {
+      externalStaticSampler.setProbability((double)staticProbability);
+      return externalStaticSampler.event();
+    }
+  }
+
   /**
    * <p>Sets the probability of "static" in I/O channel output by cells</p>
    *
@@ -573,6 +1307,95 @@ public class Universe
     this.staticProbability = staticProbability;
   }
 
+  /**
+   * <p>Sets whether cells sharing a genome are executed in lockstep</p>
+   *
+   * <p>If enabled, cells in each thread's share of the population whose
+   * genomes can neither read nor write and are not compiled yet are
+   * grouped by genome, and large enough groups are executed together (see
+   * LockstepExecutor).  Results are exactly the same either way.  This is
+   * off by default, since compiled genomes run faster one cell at a time
+   * and only large groups gain much over the decoded interpreter.</p>
+   *
+   * @param lockstepExecution Execute cells in lockstep?
+   */
+  public void setLockstepExecution(boolean lockstepExecution)
+  {
+    this.lockstepExecution = lockstepExecution;
+  }
+
+  /**
+   * Gets whether cells sharing a genome are executed in lockstep
+   *
+   * @return True if lockstep execution is enabled
+   */
+  public boolean getLockstepExecution()
+  {
+    return lockstepExecution;
+  }
+
+  /**
+   * <p>Sets the execution counts at which genomes move to faster tiers</p>
+   *
+   * <p>These are the same as RegisterMachineGenome.setTierThresholds()
+   * but only apply to cells executed by this universe, and start out as
+   * the values set there.  Genomes are shared between universes, so once
+   * a genome is decoded or compiled it stays so, but each universe only
+   * runs it in a tier that it has enabled.</p>
+   *
+   * @param decodeThreshold Executions before decoding (0 for immediately, negative to disable)
+   * @param compileThreshold Executions before compiling (0 for immediately, negative to disable)
+   */
+  public void setTierThresholds(int decodeThreshold,int compileThreshold)
+  {
+    this.decodeThreshold = decodeThreshold;
+    this.compileThreshold = compileThreshold;
+  }
+
+  /**
+   * Gets the number of executions before a genome is decoded in this universe
+   *
+   * @return Decode threshold (negative if disabled)
+   */
+  public int getDecodeThreshold()
+  {
+    return decodeThreshold;
+  }
+
+  /**
+   * Gets the number of executions before a genome is compiled in this universe
+   *
+   * @return Compile threshold (negative if disabled)
+   */
+  public int getCompileThreshold()
+  {
+    return compileThreshold;
+  }
+
+  /**
+   * <p>Sets whether to detect endless loops in genomes executed in this universe</p>
+   *
+   * <p>This is the same as RegisterMachineGenome.setCycleDetection() but
+   * only applies to cells executed by this universe, and starts out as
+   * the value set there.</p>
+   *
+   * @param cycleDetection Detect endless loops?
+   */
+  public void setCycleDetection(boolean cycleDetection)
+  {
+    this.cycleDetection = cycleDetection;
+  }
+
+  /**
+   * Gets whether endless loops are detected in genomes executed in this universe
+   *
+   * @return Detect endless loops?
+   */
+  public boolean getCycleDetection()
+  {
+    return cycleDetection;
+  }
+
   /**
    * Gets the probability of "static" in I/O channel output by cells
    *
@@ -595,7 +1418,7 @@ public class Universe
     for(int i=0;i<conditions.length;i++)
       conditions[i].deathNotify(deadCell,reason);
 
-    ++totalDeaths;
+    incWorkerStat(STAT_DEATHS);
 
     // Dead cells are removed from cell lists during runs, not here.
   }
@@ -607,6 +1430,36 @@ public class Universe
    */
   public synchronized void tick()
   {
+    tickThread = Thread.currentThread();
+    try {
+      doTick();
+    } finally {
+      tickThread = null;
+    }
+  }
+
+  /**
+   * <p>Internal method to mark the start of a phase of the tick</p>
+   *
+   * <p>In deterministic mode this also switches the tick thread to a
+   * stream for this phase, since executing cells moves it to theirs.</p>
+   *
+   * @param phase 0 before, 1 during, or 2 after cell execution
+   */
+  private void beginPhase(int phase)
+  {
+    birthEpoch = (clock * 3L) + (long)phase;
+    if (streamRandomSource != null)
+      streamRandomSource.setStream(0L,birthEpoch);
+  }
+
+  /**
+   * Internal method containing the body of tick()
+   */
+  private void doTick()
+  {
+    beginPhase(0);
+
     // Handle pre-tick on probes
     synchronized(newProbes) {
       synchronized(removeProbes) {
@@ -635,13 +1488,8 @@ public class Universe
         if ((newConditions.size() > 0) || (removeConditions.size() > 0)) {
           for(Iterator i=newConditions.iterator();i.hasNext();) {
             Condition c = (Condition)i.next();
-            for(int b=0;b<cells.length;b++) {
-              for(Iterator ci=cells[b].iterator();ci.hasNext();) {
-                Cell cell = (Cell)ci.next();
-                if (cell != null)
-                  c.initCellNotify(cell);
-              }
-            }
+            for(int ci=0,cs=cells.size();ci<cs;ci++)
+              c.initCellNotify(cells.cell(ci));
           }
           for(Iterator i=removeConditions.iterator();i.hasNext();)
             ((Condition)i.next()).destroy();
@@ -678,87 +1526,65 @@ public class Universe
       }
     }
 
-    // Handle new cells
-    if (newCells.size() > 0) {
-      synchronized(newCells) {
-        // Figure out which of the cells[] lists is emptiest
-        List emptiest = cells[0];
-        int emptiestSize = cells[0].size();
-        for(int i=1;i<cells.length;i++) {
-          if (cells[i].size() < emptiestSize) {
-            emptiestSize = cells[i].size();
-            emptiest = cells[i];
-          }
-        }
-
-        // Add cells
-        for(int x=0,s=newCells.size();x<s;x++) {
-          Cell newCell = (Cell)newCells.get(x);
-          Cell parent = (Cell)newCellParents.get(x);
-
-          boolean cellok = true;
-          for(int i=0;i<conditions.length;i++) {
-            if (!conditions[i].newCellNotify(parent,newCell))
-              cellok = false;
-          }
-
-          if (cellok) {
-            for(int i=0;i<probes.length;i++)
-              probes[i].probeNewCell(parent,newCell);
-            if (parent != null)
-              ++totalNaturalBirths;
-            else ++totalIntroducedBirths;
-            emptiest.add(newCell);
-          } else ++totalFailedBirths;
-        }
-
-        newCells.clear();
-        newCellParents.clear();
+    if (streamRandomSource != null) {
+      // Handle new cells in an order that does not depend on which
+      // thread added them
+      for(int b=0;b<birthBuffers.length;b++) {
+        deterministicBirths.addAll(birthBuffers[b]);
+        birthBuffers[b].clear();
+      }
+      synchronized(externalBirths) {
+        deterministicBirths.addAll(externalBirths);
+        externalBirths.clear();
+      }
+      if (deterministicBirths.size > 0) {
+        deterministicBirths.sort();
+        addBirths(deterministicBirths);
+      }
+    } else {
+      // Handle new cells in worker slot order, then those from other threads
+      for(int b=0;b<birthBuffers.length;b++) {
+        if (birthBuffers[b].size > 0)
+          addBirths(birthBuffers[b]);
+      }
+      synchronized(externalBirths) {
+        if (externalBirths.size > 0)
+          addBirths(externalBirths);
       }
     }
 
-    // Reset per-run stats
-    totalCellEnergy = 0L;
-    maxGenerationThisRun = 0L;
-    minGenerationThisRun = Long.MAX_VALUE;
-    ageSum = 0L;
-    genomeSizeSum = 0L;
-    maxGenomeSize = 0;
-    minGenomeSize = 2147483647;
-    totalStatic = 0;
+    beginPhase(1);
 
-    if (threads == null) {
+    // Pick up any change in static probability before cells execute
+    for(int i=0;i<staticSamplers.length;i++)
+      staticSamplers[i].setProbability((double)staticProbability);
+
+    if (workStealingPool != null) {
+      // Run chunks of the whole population on the work-stealing pool
+      executeWorkStealing();
+    } else if (threads == null) {
       // Just run in this thread if we're running single-threaded
       executeCellBatch(0);
     } else {
-      // Set number of threads running
-      threadsRunning = threads.length;
-
-      // Set 'running' on all threads
-      for(int i=0;i<threads.length;i++)
-        threads[i].running = true;
-
-      // Start all threads
-      synchronized (startNotify) {
-        startNotify.notifyAll();
+      // Start phase: release all agents
+      tickPhaser.arriveAndAwaitAdvance();
+
+      // Execute phase: run cell batch 0 in this thread
+      try {
+        executeCellBatch(0);
+      } finally {
+        // Join phase: wait for all other batches to be finished
+        tickPhaser.arriveAndAwaitAdvance();
       }
+    }
 
-      // Execute cell batch 0 in this thread (and time it as thread 0)
-      executeCellBatch(0);
+    // Remove cells that died during execution in one pass
+    cells.compact();
 
-      // Wait for all other threads to be finished
-      while (threadsRunning > 0) {
-        for (int i=0;i<threads.length;i++) {
-          if (threads[i].running) {
-            try {
-              synchronized (threads[i].endNotify) {
-                threads[i].endNotify.wait(1000L);
-              }
-            } catch (InterruptedException e) {}
-          }
-        }
-      }
-    }
+    // Combine statistics gathered by each worker during execution
+    reduceWorkerStats();
+
+    beginPhase(2);
 
     // Update max generation
     if (maxGenerationThisRun > maxGeneration)
@@ -785,6 +1611,7 @@ public class Universe
       simulation.halt("Stopped at ["+stopPoint+"].");
 
     // Report some stats
+    reduceDeaths();
     updateStats();
   }
 
@@ -795,12 +1622,10 @@ public class Universe
   {
     simulation.setStatistic("U01 [Universe] Introduced Births",totalIntroducedBirths);
     simulation.setStatistic("U02 [Universe] Natural Births",totalNaturalBirths);
-    simulation.setStatistic("U03 [Universe] Total Births",totalBirths);
+    simulation.setStatistic("U03 [Universe] Total Births",totalIntroducedBirths + totalNaturalBirths);
     simulation.setStatistic("U04 [Universe] Failed Births",totalFailedBirths);
     simulation.setStatistic("U05 [Universe] Total Deaths",totalDeaths);
-    int population = 0;
-    for(int i=0;i<cells.length;i++)
-      population += cells[i].size();
+    int population = cells.size();
     simulation.setStatistic("U06 [Universe] Population",population);
     simulation.setStatistic("U07 [Universe] Total Living Cell Energy",totalCellEnergy);
     simulation.setStatistic("U08 [Universe] Average Genome Size",((population > 0) ? (genomeSizeSum / (long)population) : 0L));
@@ -810,6 +1635,70 @@ public class Universe
     simulation.setStatistic("U12 [Universe] Highest Generation Currently Living",maxGenerationThisRun);
     simulation.setStatistic("U13 [Universe] Average Age of Living Cells",((population > 0) ? (ageSum / (long)population) : 0L));
     simulation.setStatistic("U14 [Universe] Static in I/O (this tick)",totalStatic);
+    simulation.setStatistic("U15 [Universe] Idle Cells (this tick)",totalIdle);
+    simulation.setStatistic("U16 [Universe] Lockstep Cells (this tick)",totalLockstep);
+  }
+
+  /**
+   * <p>Returns whether this universe runs in deterministic mode</p>
+   *
+   * <p>Conditions whose results depend on the order in which they see
+   * cells (e.g. because they iterate over a hash table) should put them
+   * in a fixed order (e.g. by id) when this is true.</p>
+   *
+   * @return True if deterministic
+   */
+  public boolean isDeterministic()
+  {
+    return (streamRandomSource != null);
+  }
+
+  /**
+   * Gets the number of threads this universe can run in parallel
+   *
+   * @return Number of threads (1 if running single-threaded)
+   */
+  public int parallelism()
+  {
+    if (workStealingPool != null)
+      return workStealingPool.getParallelism();
+    MultiThreadedExecutionAgent[] th = threads;
+    return ((th == null) ? 1 : (th.length + 1));
+  }
+
+  /**
+   * <p>Runs a fork/join task on this universe's threads and waits for it</p>
+   *
+   * <p>This is for conditions and probes with parallel work to do in
+   * preTickNotify or postTickNotify, when cells are not executing.  With
+   * fixed batches the execution agents are not fork/join workers, so a
+   * separate pool of parallelism() threads is started the first time this
+   * is called.  Callers with little work to do (e.g. when parallelism() is
+   * 1) should just do it in the calling thread instead.</p>
+   *
+   * @param task Task to run
+   */
+  public void invoke(ForkJoinTask task)
+  {
+    ForkJoinPool pool = workStealingPool;
+    if (pool == null) {
+      synchronized(this) {
+        if (helperPool == null)
+          helperPool = new ForkJoinPool(parallelism());
+        pool = helperPool;
+      }
+    }
+    pool.invoke(task);
+  }
+
+  /**
+   * Gets the execution mode of this universe
+   *
+   * @return Execution mode (one of the EXECUTION_MODE constants)
+   */
+  public int executionMode()
+  {
+    return executionMode;
   }
 
   /**
@@ -851,10 +1740,7 @@ public class Universe
    */
   public int population()
   {
-    int r = 0;
-    for(int i=0;i<cells.length;i++)
-      r += cells[i].size();
-    return r;
+    return cells.size();
   }
 
   /**
@@ -886,4 +1772,53 @@ public class Universe
   {
     return totalCellEnergy;
   }
+
+  /**
+   * <p>Main method: run this class to benchmark tick latency</p>
+   *
+   * <p>This measures the mean wall-clock time of a single tick with small
+   * populations, where the cost of starting and joining the execution
+   * agents dominates the cost of executing cells.</p>
+   *
+   * @param argv Arguments (not used)
+   */
+  public static void main(String[] argv)
+  {
+    try {
+      System.out.println("Benchmarking Universe tick latency...");
+      System.out.println();
+
+      int[] threadCounts = { 1,2,4,8 };
+      int[] populations = { 0,16,256 };
+      NumberFormat df = DecimalFormat.getNumberInstance();
+      df.setMaximumFractionDigits(2);
+      df.setMinimumFractionDigits(2);
+      df.setMinimumIntegerDigits(1);
+      df.setMaximumIntegerDigits(16384);
+      df.setGroupingUsed(false);
+
+      for(int t=0;t<threadCounts.length;t++) {
+        for(int p=0;p<populations.length;p++) {
+          Simulation sim = new Simulation(threadCounts[t],"Benchmark",new MersenneTwisterRandomSource(0L));
+          Universe u = sim.universe();
+          for(int i=0;i<populations[p];i++)
+            u.addCell(null,new Cell(sim,u,null,Integer.MAX_VALUE / 2,new RegisterMachineGenome(sim.randomSource(),"ggggg+++>[<}")));
+
+          for(int i=0;i<1000;i++)
+            u.tick();
+          System.gc();
+
+          long start = System.currentTimeMillis();
+          for(int i=0;i<10000;i++)
+            u.tick();
+          long end = System.currentTimeMillis();
+          sim.kill();
+
+          System.out.println("Threads: "+threadCounts[t]+" Population: "+populations[p]+" Tick Latency: "+df.format((double)(end-start) * 1000.0 / 10000.0)+"usec");
+        }
+      }
+    } catch (Throwable t) {
+      t.printStackTrace();
+    }
+  }
 }
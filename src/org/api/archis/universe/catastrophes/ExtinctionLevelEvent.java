@@ -8,6 +8,7 @@ import org.api.archis.life.Cell;
 import org.api.archis.life.DeathException;
 import org.api.archis.universe.*;
 import org.api.archis.utils.RandomSource;
+import org.api.archis.utils.RareEventSampler;
 
 /**
  * A universal condition that runs for one clock cycle that kills many cells
@@ -26,6 +27,8 @@ public class ExtinctionLevelEvent implements Catastrophe
   private float deathPercentage;
   private boolean destroy;
   private Simulation simulation;
+  private RareEventSampler.PerThread deathSampler;
+  private boolean deterministic;
 
   /**
    * Constructs a new extinction level event with default values of 0.75 and destroy=false
@@ -52,6 +55,8 @@ public class ExtinctionLevelEvent implements Catastrophe
   public void init(Universe universe,Simulation simulation)
   {
     this.simulation = simulation;
+    deterministic = universe.isDeterministic();
+    deathSampler = new RareEventSampler.PerThread(simulation.randomSource(),(double)deathPercentage);
   }
 
   public void destroy()
@@ -75,7 +80,10 @@ public class ExtinctionLevelEvent implements Catastrophe
 
   public void preExecutionNotify(Cell cell)
   {
-    if (simulation.randomSource().randomEvent(deathPercentage))
+    // Count down to this thread's next survivor (or next victim, if the
+    // percentage is under one half) rather than drawing for every cell;
+    // deterministic mode draws per cell from its stream
+    if (deterministic ? simulation.randomSource().randomEvent(deathPercentage) : deathSampler.event((double)deathPercentage))
       cell.kill(destroy,"ExtinctionLevelEvent");
   }
 
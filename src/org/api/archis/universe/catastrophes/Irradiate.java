@@ -6,6 +6,7 @@ import org.api.archis.*;
 import org.api.archis.life.*;
 import org.api.archis.universe.*;
 import org.api.archis.utils.RandomSource;
+import org.api.archis.utils.RareEventSampler;
 
 /**
  * A universal condition that runs for one cycle and causes tons of mutations.
@@ -24,6 +25,8 @@ public class Irradiate implements Catastrophe
   private int maxMutations;
   private float mutationLikelihood;
   private RandomSource randomSource;
+  private RareEventSampler.PerThread mutationSampler;
+  private boolean deterministic;
 
   /**
    * Constructs a new irradiate event with a mutation likelihood of 0.75 and maxMutations=5
@@ -50,6 +53,8 @@ public class Irradiate implements Catastrophe
   public void init(Universe universe,Simulation simulation)
   {
     randomSource = simulation.randomSource();
+    deterministic = universe.isDeterministic();
+    mutationSampler = new RareEventSampler.PerThread(randomSource,(double)mutationLikelihood);
   }
 
   public void destroy()
@@ -73,7 +78,10 @@ public class Irradiate implements Catastrophe
 
   public void preExecutionNotify(Cell cell)
   {
-    if (randomSource.randomEvent(mutationLikelihood)) {
+    // Count down to this thread's next spared cell (or next hit, if the
+    // likelihood is under one half) rather than drawing for every cell;
+    // deterministic mode draws per cell from its stream
+    if (deterministic ? randomSource.randomEvent(mutationLikelihood) : mutationSampler.event((double)mutationLikelihood)) {
       int c = randomSource.randomPositiveInteger() % maxMutations;
       if (c == 0)
         c = 1;
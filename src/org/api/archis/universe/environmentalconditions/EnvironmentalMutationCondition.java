@@ -26,6 +26,8 @@ public class EnvironmentalMutationCondition implements EnvironmentalCondition
   private int mutationsThisTick;
   private Simulation simulation;
   private RandomSource randomSource;
+  private RareEventSampler.PerThread mutationSampler;
+  private boolean deterministic;
 
   /**
    * Constructs a new environmental mutation condition
@@ -59,6 +61,8 @@ public class EnvironmentalMutationCondition implements EnvironmentalCondition
   {
     this.simulation = simulation;
     this.randomSource = simulation.randomSource();
+    deterministic = universe.isDeterministic();
+    mutationSampler = new RareEventSampler.PerThread(randomSource,(double)mutationLikelihood);
   }
 
   public void destroy()
@@ -85,7 +89,10 @@ public class EnvironmentalMutationCondition implements EnvironmentalCondition
 
   public void preExecutionNotify(Cell cell)
   {
-    if (randomSource.randomEvent(mutationLikelihood)) {
+    // Each thread skips ahead to its next event instead of drawing for
+    // every cell, except in deterministic mode where each cell has its
+    // own random stream
+    if (deterministic ? randomSource.randomEvent(mutationLikelihood) : mutationSampler.event((double)mutationLikelihood)) {
       ++mutationsThisTick;
       cell.setGenome(cell.genome().pointMutation(randomSource));
     }
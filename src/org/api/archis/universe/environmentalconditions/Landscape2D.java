@@ -10,7 +10,9 @@ import java.awt.image.BufferedImage;
 import org.api.archis.*;
 import org.api.archis.gui.conditions.*;
 import org.api.archis.life.Cell;
+import org.api.archis.life.CellAttribute;
 import org.api.archis.life.DeathException;
+import org.api.archis.life.Genome;
 import org.api.archis.universe.*;
 import org.api.archis.utils.*;
 
@@ -300,35 +302,20 @@ public class Landscape2D implements EnvironmentalCondition
     }
   }
 
-  //
-  // Key for cell location in cell info
-  //
-  private static final Object CELL_INFO_LOCATION = "L2D_L";
-
-  //
-  // Key for cell movement potential
-  //
-  private static final Object CELL_INFO_MP = "L2D_M";
-
-  //
-  // Key for attackers
-  //
-  private static final Object CELL_INFO_ATTACKERS = "L2D_A";
-
-  //
-  // Key for info blocks
-  //
-  private static final Object CELL_INFO_INFOBLOCK = "L2D_I";
-
-  //
-  // Key for info blocks that have been released
-  //
-  private static final Object CELL_INFO_INFOPENDING = "L2D_IP";
-
   // -------------------------------------------------------------------------
   // Instance Variables
   // -------------------------------------------------------------------------
 
+  //
+  // Cell attributes for location, movement potential, attackers, info
+  // blocks, and info blocks that have been released (registered at init())
+  //
+  private CellAttribute cellLocation;
+  private CellAttribute cellMovementPotential;
+  private CellAttribute cellAttackers;
+  private CellAttribute cellInfoBlock;
+  private CellAttribute cellInfoPending;
+
   //
   // Dimensions of landscape
   //
@@ -619,13 +606,13 @@ public class Landscape2D implements EnvironmentalCondition
           synchronized(infoByLocation) {
             InfoBlock info = (InfoBlock)infoByLocation.remove(loc);
             if (info != null)
-              l.setMetaInfo(CELL_INFO_INFOBLOCK,info.data);
+              l.setAttribute(cellInfoBlock,info.data);
           }
         }
 
         // Move cell
         landscape[loc.x][loc.y] = BLOCK_CELL;
-        l.setMetaInfo(CELL_INFO_LOCATION,loc);
+        l.setAttribute(cellLocation,loc);
         cellsByLocation_new.put(loc,l);
       }
 
@@ -858,7 +845,7 @@ public class Landscape2D implements EnvironmentalCondition
    */
   public int[] getCellLocation(Cell l)
   {
-    XYLocation loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+    XYLocation loc = (XYLocation)l.getAttribute(cellLocation);
     if (loc == null)
       return null;
     else {
@@ -934,6 +921,11 @@ public class Landscape2D implements EnvironmentalCondition
     this.universe = universe;
     this.simulation = simulation;
     this.randomSource = simulation.randomSource();
+    cellLocation = CellAttribute.register("L2D_L",XYLocation.class);
+    cellMovementPotential = CellAttribute.register("L2D_M",int[].class);
+    cellAttackers = CellAttribute.register("L2D_A",List.class);
+    cellInfoBlock = CellAttribute.register("L2D_I",int[].class);
+    cellInfoPending = CellAttribute.register("L2D_IP",EfficientIntegerBuffer.class);
     universe.assignChannel(2,this);
     universe.assignChannel(3,this);
     universe.assignChannel(4,this);
@@ -974,7 +966,7 @@ public class Landscape2D implements EnvironmentalCondition
         XYLocation loc = (XYLocation)ent.getKey();
         if (l.alive()) {
           // Check for attackers and kill if one is successful
-          List attackers = (List)l.getMetaInfo(CELL_INFO_ATTACKERS);
+          List attackers = (List)l.getAttribute(cellAttackers);
           if (attackers != null) {
             if (attackSuccessProbability > 0.0F) {
               for (Iterator i = attackers.iterator();i.hasNext();) {
@@ -987,7 +979,7 @@ public class Landscape2D implements EnvironmentalCondition
 
                     // Remove dead cell
                     it.remove();
-                    loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+                    loc = (XYLocation)l.getAttribute(cellLocation);
                     landscape[loc.x][loc.y] = BLOCK_EMPTY;
 
                     // Notify observers
@@ -1015,9 +1007,9 @@ public class Landscape2D implements EnvironmentalCondition
           // Handle info and do movement if still alive
           if (l.alive()) {
             // Get pending info and create a neighboring info cell if necessary
-            EfficientIntegerBuffer pinfo = (EfficientIntegerBuffer)l.removeMetaInfo(CELL_INFO_INFOPENDING);
+            EfficientIntegerBuffer pinfo = (EfficientIntegerBuffer)l.removeAttribute(cellInfoPending);
             if (pinfo != null) {
-              XYLocation parentLoc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+              XYLocation parentLoc = (XYLocation)l.getAttribute(cellLocation);
               boolean found = false;
               int x = 0,y = 0;
               for(int dx=0;dx<ADJACENT3X3_CELL_MATH.length;dx++) {
@@ -1066,7 +1058,7 @@ public class Landscape2D implements EnvironmentalCondition
             }
 
             // Get movement potential
-            int[] mp = (int[])l.getMetaInfo(CELL_INFO_MP);
+            int[] mp = (int[])l.getAttribute(cellMovementPotential);
 
             // Only do anything if there is a movement potential
             if (mp != null) {
@@ -1101,7 +1093,7 @@ public class Landscape2D implements EnvironmentalCondition
                   int oldY = loc.y;
                   loc.x = destX;
                   loc.y = destY;
-                  l.setMetaInfo(CELL_INFO_LOCATION,loc);
+                  l.setAttribute(cellLocation,loc);
                   cellsByLocation_new.put(loc,l);
 
                   // Notify observers
@@ -1128,7 +1120,7 @@ public class Landscape2D implements EnvironmentalCondition
                     synchronized(infoByLocation) {
                       InfoBlock info = (InfoBlock)infoByLocation.remove(loc);
                       if (info != null)
-                        l.setMetaInfo(CELL_INFO_INFOBLOCK,info.data);
+                        l.setAttribute(cellInfoBlock,info.data);
                     }
                   }
 
@@ -1147,7 +1139,7 @@ public class Landscape2D implements EnvironmentalCondition
         } else {
           // Remove dead cells and convert remaining value to energy blocks
           it.remove();
-          loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+          loc = (XYLocation)l.getAttribute(cellLocation);
           if (l.energy() > 0) {
             landscape[loc.x][loc.y] = BLOCK_ENERGY;
             synchronized(energyByLocation) {
@@ -1321,21 +1313,24 @@ public class Landscape2D implements EnvironmentalCondition
     //
 
     // Get cell location
-    XYLocation loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+    XYLocation loc = (XYLocation)l.getAttribute(cellLocation);
 
     // Randomly place if for some weird reason we don't know where it is
     if (loc == null) {
       newCellNotify(null,l);
-      loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+      loc = (XYLocation)l.getAttribute(cellLocation);
     }
 
-    // Set input for channels 0 and 1 (cell and energy vision)
-    l.setInput(2,new NeighborLocationsIntegerInput(loc.x,loc.y,BLOCK_CELL));
-    l.setInput(3,new NeighborLocationsIntegerInput(loc.x,loc.y,BLOCK_ENERGY));
+    // Set input for channels 0 and 1 (cell and energy vision) unless the
+    // cell's genome can never read it
+    if ((l.genome().analysisFlags() & Genome.ANALYSIS_READ_FREE) == 0) {
+      l.setInput(2,new NeighborLocationsIntegerInput(loc.x,loc.y,BLOCK_CELL));
+      l.setInput(3,new NeighborLocationsIntegerInput(loc.x,loc.y,BLOCK_ENERGY));
+    }
 
     // Set attacker input
     if (attackSuccessProbability > 0.0F) {
-      List attackers = (List)l.getMetaInfo(CELL_INFO_ATTACKERS);
+      List attackers = (List)l.getAttribute(cellAttackers);
       if (attackers != null) {
         synchronized (attackers) {
           int[] at = new int[attackers.size()];
@@ -1352,7 +1347,7 @@ public class Landscape2D implements EnvironmentalCondition
     }
 
     // Set info input
-    int[] data = (int[])l.removeMetaInfo(CELL_INFO_INFOBLOCK);
+    int[] data = (int[])l.removeAttribute(cellInfoBlock);
     if (data != null)
       l.setInput(5,new BufferedIntegerInput(data));
   }
@@ -1366,10 +1361,10 @@ public class Landscape2D implements EnvironmentalCondition
         // Movement
 
         // Get movement potential (x and y are [0] and [1] respectively)
-        int[] mp = (int[])l.getMetaInfo(CELL_INFO_MP);
+        int[] mp = (int[])l.getAttribute(cellMovementPotential);
         if (mp == null) {
           mp = new int[2];
-          l.setMetaInfo(CELL_INFO_MP,mp);
+          l.setAttribute(cellMovementPotential,mp);
         }
 
         // Check directions and modify movement potential
@@ -1408,7 +1403,7 @@ public class Landscape2D implements EnvironmentalCondition
         // Attack and vision of attack
 
         if (attackSuccessProbability > 0.0F) {
-          loc = (XYLocation)l.getMetaInfo(CELL_INFO_LOCATION);
+          loc = (XYLocation)l.getAttribute(cellLocation);
           if (loc != null) {
             // Get attacked cell (if any)
             int x = loc.x,y = loc.y;
@@ -1467,11 +1462,11 @@ public class Landscape2D implements EnvironmentalCondition
             // Add attacking cell to list of attackers in target if target
             // was found.
             if (target != null) {
-              List attackers = (List)target.getMetaInfo(CELL_INFO_ATTACKERS);
-              if (attackers == null) {
-                attackers = new LinkedList();
-                target.setMetaInfo(CELL_INFO_ATTACKERS,attackers);
-              }
+              // Attackers run in other threads than their targets, so all
+              // of them must create the target's list the same way
+              List attackers = (List)target.getAttribute(cellAttackers);
+              if (attackers == null)
+                attackers = (List)target.attachAttribute(cellAttackers,new LinkedList());
               synchronized (attackers) {
                 attackers.add(l);
                 attackers.add(new Integer(correspondingDir));
@@ -1481,10 +1476,10 @@ public class Landscape2D implements EnvironmentalCondition
         }
         break;
       case 5:
-        EfficientIntegerBuffer ip = (EfficientIntegerBuffer)l.getMetaInfo(CELL_INFO_INFOPENDING);
+        EfficientIntegerBuffer ip = (EfficientIntegerBuffer)l.getAttribute(cellInfoPending);
         if (ip == null) {
           ip = new EfficientIntegerBuffer(64);
-          l.setMetaInfo(CELL_INFO_INFOPENDING,ip);
+          l.setAttribute(cellInfoPending,ip);
         }
         ip.add(value);
         break;
@@ -1507,7 +1502,7 @@ public class Landscape2D implements EnvironmentalCondition
     // is null)
     int x = 0,y = 0;
     if (parent != null) {
-      XYLocation parentLoc = (XYLocation)parent.getMetaInfo(CELL_INFO_LOCATION);
+      XYLocation parentLoc = (XYLocation)parent.getAttribute(cellLocation);
 
       boolean found = false;
       for(int dx=0;dx<ADJACENT3X3_CELL_MATH.length;dx++) {
@@ -1561,7 +1556,7 @@ public class Landscape2D implements EnvironmentalCondition
     }
 
     // Place new cell at location
-    newCell.setMetaInfo(CELL_INFO_LOCATION,loc);
+    newCell.setAttribute(cellLocation,loc);
     synchronized(cellsByLocation) {
       cellsByLocation.put(loc,newCell);
     }
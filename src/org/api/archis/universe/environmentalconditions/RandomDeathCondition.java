@@ -27,6 +27,8 @@ public class RandomDeathCondition implements EnvironmentalCondition
   private float randomDeathLikelihood;
   private boolean destroy;
   private int randomDeathsThisTick;
+  private RareEventSampler.PerThread deathSampler;
+  private boolean deterministic;
 
   /**
    * Constructs a new random death condition
@@ -81,6 +83,8 @@ public class RandomDeathCondition implements EnvironmentalCondition
   {
     this.simulation = simulation;
     randomSource = simulation.randomSource();
+    deterministic = universe.isDeterministic();
+    deathSampler = new RareEventSampler.PerThread(randomSource,(double)randomDeathLikelihood);
   }
 
   public void destroy()
@@ -107,7 +111,9 @@ public class RandomDeathCondition implements EnvironmentalCondition
 
   public void preExecutionNotify(Cell cell)
   {
-    if (randomSource.randomEvent(randomDeathLikelihood)) {
+    // Count down to this thread's next random death rather than drawing
+    // for every cell (deterministic mode draws per cell from its stream)
+    if (deterministic ? randomSource.randomEvent(randomDeathLikelihood) : deathSampler.event((double)randomDeathLikelihood)) {
       ++randomDeathsThisTick;
       cell.kill(destroy,"RandomDeathCondition");
     }
@@ -1,6 +1,7 @@
 package org.api.archis.universe.environmentalconditions;
 
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import org.api.archis.*;
 import org.api.archis.life.*;
@@ -26,9 +27,20 @@ public class ReproductionCondition implements EnvironmentalCondition
    */
   public static final String CONDITION_DESCRIPTION = "Provides cells with the ability to reproduce by outputting the genetic information of the child.";
 
-  // Children to be created at postTickNotify() (key is parent, value is
-  // EfficientByteBuffer containing genome output so far)
-  private HashMap children;
+  // Minimum number of children to build in parallel at postTickNotify(),
+  // and children built by each parallel task
+  private static final int PARALLEL_MIN_CHILDREN = 64;
+  private static final int PARALLEL_CHUNK = 16;
+
+  // Cells with a child to be created at postTickNotify(), listed by the
+  // worker slot of the thread that executed them so that threads never
+  // share a list, and a locked list for threads that are not workers
+  private ArrayList[] slotParents;
+  private ArrayList externalParents;
+
+  // Cell attribute for the GenomeBuilder with a cell's child output so far
+  // (registered at init())
+  private CellAttribute cellChild;
 
   // Universe we exist within and our simulation
   private Universe universe;
@@ -72,15 +84,36 @@ public class ReproductionCondition implements EnvironmentalCondition
   }
 
   /**
-   * Class for child buffer structure
+   * Task building the genomes of a range of children in parallel
    *
    * @author Adam Ierymenko
    * @version 1.0
    */
-  private static class ChildBuffer
+  private class BuildTask extends RecursiveAction
   {
-    public int ptr;
-    public byte[] buf;
+    private static final long serialVersionUID = 1L;
+
+    private Cell[] parents;
+    private Genome[] genomes;
+    private int start,end;
+
+    public BuildTask(Cell[] parents,Genome[] genomes,int start,int end)
+    {
+      this.parents = parents;
+      this.genomes = genomes;
+      this.start = start;
+      this.end = end;
+    }
+
+    protected void compute()
+    {
+      if ((end - start) <= PARALLEL_CHUNK)
+        build(parents,genomes,start,end);
+      else {
+        int mid = start + ((end - start) / 2);
+        invokeAll(new BuildTask(parents,genomes,start,mid),new BuildTask(parents,genomes,mid,end));
+      }
+    }
   }
 
   /**
@@ -88,7 +121,7 @@ public class ReproductionCondition implements EnvironmentalCondition
    */
   public ReproductionCondition()
   {
-    children = new HashMap(16384,0.75F);
+    externalParents = new ArrayList();
     minGenomeSize = 8;
     maxGenomeSize = 131072;
     parentEnergyDividend = 2;
@@ -185,7 +218,7 @@ public class ReproductionCondition implements EnvironmentalCondition
 
   public void preExecutionNotify(Cell l)
   {
-    if (l.alive())
+    if (l.alive()&&((l.genome().analysisFlags() & Genome.ANALYSIS_READ_FREE) == 0))
       l.setInput(0,new EnergyAndGenomeSizeIntegerInput(l));
   }
 
@@ -193,27 +226,23 @@ public class ReproductionCondition implements EnvironmentalCondition
     throws DeathException
   {
     if (channel == 0) {
-      ChildBuffer cb;
-      synchronized(children) {
-        cb = (ChildBuffer)children.get(l);
-      }
+      // A cell is only executed by one thread at a time, so only that
+      // thread ever touches its builder or its slot's list of parents
+      GenomeBuilder cb = (GenomeBuilder)l.getAttribute(cellChild);
       if (cb == null) {
-        cb = new ChildBuffer();
-        cb.ptr = 0;
-        cb.buf = new byte[l.genome().size() * 2];
-        synchronized(children) {
-          children.put(l,cb);
-        }
-      }
-      if (cb.ptr < maxGenomeSize) {
-        cb.buf[cb.ptr++] = (byte)value;
-        if (cb.ptr >= cb.buf.length) {
-          byte[] nb = new byte[cb.buf.length*2];
-          for(int i=0;i<cb.ptr;i++)
-            nb[i] = cb.buf[i];
-          cb.buf = nb;
+        cb = l.genome().createChildBuilder();
+        l.setAttribute(cellChild,cb);
+        int slot = universe.workerSlot();
+        if (slot >= 0)
+          slotParents[slot].add(l);
+        else {
+          synchronized(externalParents) {
+            externalParents.add(l);
+          }
         }
       }
+      if (cb.size() < maxGenomeSize)
+        cb.append(value);
     }
   }
 
@@ -221,6 +250,10 @@ public class ReproductionCondition implements EnvironmentalCondition
   {
     this.universe = universe;
     this.simulation = simulation;
+    slotParents = new ArrayList[universe.workerSlots()];
+    for(int i=0;i<slotParents.length;i++)
+      slotParents[i] = new ArrayList();
+    cellChild = CellAttribute.register("RC_C",GenomeBuilder.class);
     universe.assignChannel(0,this);
   }
 
@@ -237,26 +270,70 @@ public class ReproductionCondition implements EnvironmentalCondition
   public void postTickNotify()
     throws ConditionExpirationException
   {
-    synchronized(children) {
-      for(Iterator it=children.entrySet().iterator();it.hasNext();) {
-        Map.Entry ent = (Map.Entry)it.next();
-        ChildBuffer cb = (ChildBuffer)ent.getValue();
-
-        if (cb.ptr >= minGenomeSize) {
-          Cell parent = (Cell)ent.getKey();
-          int parentEnergy = parent.energy();
-          if (parentEnergy > parentEnergyDividend) {
-            int childEnergy = parentEnergy / parentEnergyDividend;
-            try {
-              parent.decEnergy(childEnergy);
-            } catch (DeathException e) {
-              // should never happen as childEnergy is always < parent energy
-            }
-            universe.addCell(parent,new Cell(simulation,universe,parent,childEnergy,parent.genome().createNew(cb.buf,0,cb.ptr).canonicalize()));
-          }
+    // Collect the parents listed by every thread
+    ArrayList all = new ArrayList();
+    for(int i=0;i<slotParents.length;i++) {
+      all.addAll(slotParents[i]);
+      slotParents[i].clear();
+    }
+    synchronized(externalParents) {
+      all.addAll(externalParents);
+      externalParents.clear();
+    }
+    if (all.size() == 0)
+      return;
+
+    // Children get their ids when they are added, so always add them in
+    // parent id order no matter which threads executed the parents
+    Cell[] pa = (Cell[])all.toArray(new Cell[all.size()]);
+    Arrays.sort(pa,new Comparator() {
+      public int compare(Object o1,Object o2)
+      {
+        long a = ((Cell)o1).id();
+        long b = ((Cell)o2).id();
+        return ((a < b) ? -1 : ((a == b) ? 0 : 1));
+      }
+    });
+
+    // Build genomes (the expensive part) in parallel if there are enough
+    Genome[] genomes = new Genome[pa.length];
+    if ((pa.length >= PARALLEL_MIN_CHILDREN)&&(universe.parallelism() > 1))
+      universe.invoke(new BuildTask(pa,genomes,0,pa.length));
+    else build(pa,genomes,0,pa.length);
+
+    // Create and add the children in order in this thread
+    for(int i=0;i<pa.length;i++) {
+      if (genomes[i] != null) {
+        Cell parent = pa[i];
+        int childEnergy = parent.energy() / parentEnergyDividend;
+        try {
+          parent.decEnergy(childEnergy);
+        } catch (DeathException e) {
+          // should never happen as childEnergy is always < parent energy
         }
+        universe.addCell(parent,new Cell(simulation,universe,parent,childEnergy,genomes[i]));
       }
-      children.clear();
+    }
+  }
+
+  /**
+   * <p>Internal method to build the genomes of a range of children</p>
+   *
+   * <p>This takes each parent's builder and builds its child's genome if
+   * the child is large enough and the parent has the energy to spawn it.
+   * Parents are only read here, so ranges can be built in parallel.</p>
+   *
+   * @param parents Parents sorted by id
+   * @param genomes Array to fill with genomes (null for no child)
+   * @param start First parent
+   * @param end Parent after the last
+   */
+  private void build(Cell[] parents,Genome[] genomes,int start,int end)
+  {
+    for(int i=start;i<end;i++) {
+      GenomeBuilder cb = (GenomeBuilder)parents[i].removeAttribute(cellChild);
+      if ((cb != null)&&(cb.size() >= minGenomeSize)&&(parents[i].energy() > parentEnergyDividend))
+        genomes[i] = cb.build();
     }
   }
 }
@@ -0,0 +1,96 @@
+package org.api.archis.universe.probes;
+
+import java.util.*;
+
+import org.api.archis.Simulation;
+import org.api.archis.life.*;
+import org.api.archis.life.vms.RegisterMachineGenome;
+import org.api.archis.universe.*;
+
+/**
+ * <p>Probe reporting how genomes are being executed</p>
+ *
+ * <p>Register machine genomes move from the packed interpreter to the
+ * decoded interpreter to compiled bytecode as they are executed more
+ * often.  This reports how many distinct living genomes are in each tier
+ * this universe runs them in and what share of last tick's instructions
+ * each tier ran in this universe, along with the number of genomes whose
+ * bytecode failed to load.  The failure count is JVM-wide, so with several
+ * simulations in one JVM it includes all of them.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class ExecutionTierProbe implements Probe
+{
+  public static final String PROBE_DESCRIPTION = "Reports how many genomes are interpreted, decoded, or compiled and the share of instructions each runs.";
+
+  private static final String[] TIER_NAMES = { "Packed","Decoded","Compiled" };
+
+  private Universe universe;
+  private Simulation simulation;
+
+  /**
+   * Constructs a new execution tier probe
+   */
+  public ExecutionTierProbe()
+  {
+  }
+
+  public void showGUI()
+  {
+  }
+
+  public void init(Universe universe,Simulation simulation)
+  {
+    this.universe = universe;
+    this.simulation = simulation;
+  }
+
+  public void destroy()
+  {
+    for(int t=0;t<TIER_NAMES.length;t++) {
+      simulation.removeStatistic("ET"+(t+1)+" [ExecutionTierProbe] "+TIER_NAMES[t]+" Genomes");
+      simulation.removeStatistic("ET"+(t+4)+" [ExecutionTierProbe] "+TIER_NAMES[t]+" Instruction Share (%)");
+    }
+    simulation.removeStatistic("ET7 [ExecutionTierProbe] Compile Failures");
+  }
+
+  public void preTickNotify()
+  {
+  }
+
+  public void postTickNotify()
+  {
+    // Count distinct genomes in each tier (living cells share canonical
+    // genome objects, so count each object once)
+    long[] genomes = new long[RegisterMachineGenome.TIER_COUNT];
+    IdentityHashMap seen = new IdentityHashMap();
+    Population p = universe.populationStore();
+    for(int i=0,s=p.size();i<s;i++) {
+      Genome g = p.genome(i);
+      if ((g instanceof RegisterMachineGenome)&&(seen.put(g,g) == null))
+        ++genomes[((RegisterMachineGenome)g).executionTier(universe)];
+    }
+
+    // Share of instructions run in each tier last tick
+    long total = 0L;
+    for(int t=0;t<RegisterMachineGenome.TIER_COUNT;t++)
+      total += universe.tierInstructions(t);
+
+    for(int t=0;t<TIER_NAMES.length;t++) {
+      simulation.setStatistic("ET"+(t+1)+" [ExecutionTierProbe] "+TIER_NAMES[t]+" Genomes",genomes[t]);
+      simulation.setStatistic("ET"+(t+4)+" [ExecutionTierProbe] "+TIER_NAMES[t]+" Instruction Share (%)",((total > 0L) ? (((double)universe.tierInstructions(t) * 100.0) / (double)total) : 0.0));
+    }
+    simulation.setStatistic("ET7 [ExecutionTierProbe] Compile Failures",RegisterMachineGenome.getCompileFailures());
+  }
+
+  public void probeScanCell(Cell cell)
+  {
+  }
+
+  public void probeNewCell(Cell parent,Cell newCell)
+  {
+  }
+}
@@ -0,0 +1,79 @@
+package org.api.archis.universe.probes;
+
+import org.api.archis.Simulation;
+import org.api.archis.life.*;
+import org.api.archis.life.vms.RegisterMachineGenome;
+import org.api.archis.universe.*;
+
+/**
+ * <p>Probe reporting on the pool of canonical genomes</p>
+ *
+ * <p>Cells with equal genomes share one canonical genome object from a
+ * pool (see GenomePool).  This reports how many genomes are pooled, what
+ * share of last tick's canonicalizations found an equal genome already in
+ * the pool, and how much memory sharing saves.  The pool is JVM-wide, so
+ * with several simulations in one JVM these include all of them.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class GenomePoolProbe implements Probe
+{
+  public static final String PROBE_DESCRIPTION = "Reports the size, hit rate, and memory savings of the canonical genome pool.";
+
+  private Simulation simulation;
+  private long lastHits,lastMisses;
+
+  /**
+   * Constructs a new genome pool probe
+   */
+  public GenomePoolProbe()
+  {
+  }
+
+  public void showGUI()
+  {
+  }
+
+  public void init(Universe universe,Simulation simulation)
+  {
+    this.simulation = simulation;
+    GenomePool pool = RegisterMachineGenome.genomePool();
+    lastHits = pool.hits();
+    lastMisses = pool.misses();
+  }
+
+  public void destroy()
+  {
+    simulation.removeStatistic("GP1 [GenomePoolProbe] Pooled Genomes");
+    simulation.removeStatistic("GP2 [GenomePoolProbe] Hit Rate Last Tick (%)");
+    simulation.removeStatistic("GP3 [GenomePoolProbe] Bytes Saved");
+  }
+
+  public void preTickNotify()
+  {
+  }
+
+  public void postTickNotify()
+  {
+    GenomePool pool = RegisterMachineGenome.genomePool();
+    long hits = pool.hits();
+    long misses = pool.misses();
+    long total = (hits - lastHits) + (misses - lastMisses);
+
+    simulation.setStatistic("GP1 [GenomePoolProbe] Pooled Genomes",pool.size());
+    simulation.setStatistic("GP2 [GenomePoolProbe] Hit Rate Last Tick (%)",((total > 0L) ? (((double)(hits - lastHits) * 100.0) / (double)total) : 0.0));
+    simulation.setStatistic("GP3 [GenomePoolProbe] Bytes Saved",pool.savedBytes());
+    lastHits = hits;
+    lastMisses = misses;
+  }
+
+  public void probeScanCell(Cell cell)
+  {
+  }
+
+  public void probeNewCell(Cell parent,Cell newCell)
+  {
+  }
+}
@@ -1,7 +1,5 @@
 package org.api.archis.universe.rewardfunctions;
 
-import java.util.Iterator;
-
 import org.api.archis.*;
 import org.api.archis.life.*;
 import org.api.archis.universe.*;
@@ -107,8 +105,9 @@ public class BaselineRewardFunction implements RewardFunction
     int p;
     if ((totalEnergy < maintainEnergy)&&((p = universe.population()) > 0)) {
       int energyPerCell = (int)(maintainEnergy - totalEnergy) / p;
-      for(Iterator i=universe.populationIterator();i.hasNext();) {
-        Cell c = (Cell)i.next();
+      Population pop = universe.populationStore();
+      for(int i=0,s=pop.size();i<s;i++) {
+        Cell c = pop.cell(i);
         if (c.alive())
           c.incEnergy(energyPerCell);
       }
@@ -5,7 +5,7 @@ import java.util.*;
 import org.api.archis.*;
 import org.api.archis.life.*;
 import org.api.archis.universe.*;
-import org.api.archis.utils.IntegerHashtable;
+import org.api.archis.utils.LongHashtable;
 
 /**
  * Distributes a reward on the basis of diversity
@@ -24,7 +24,7 @@ public class DiversityRewardFunction implements RewardFunction
   private Universe universe;
   private Simulation simulation;
   private long distributePerTick;
-  private IntegerHashtable classificationTable;
+  private LongHashtable classificationTable;
 
   /**
    * Constructs a new diversity reward function
@@ -32,7 +32,7 @@ public class DiversityRewardFunction implements RewardFunction
   public DiversityRewardFunction()
   {
     distributePerTick = 1000000L;
-    classificationTable = new IntegerHashtable(4096);
+    classificationTable = new LongHashtable(4096);
   }
 
   /**
@@ -81,7 +81,7 @@ public class DiversityRewardFunction implements RewardFunction
   public void preExecutionNotify(Cell l)
   {
     // Classify cell by genome checksum
-    int cksum = l.genome().checksum();
+    long cksum = l.genome().checksum64();
     LinkedList list;
     synchronized(classificationTable) {
       list = (LinkedList)classificationTable.get(cksum);
@@ -1,6 +1,8 @@
 package org.api.archis.universe.rewardfunctions;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.api.archis.*;
 import org.api.archis.life.*;
@@ -14,8 +16,9 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
    */
   public static final String CONDITION_DESCRIPTION = "Rewards cells for outputting fibonacci numbers.";
 
-  // Cell info field for it's current output sequence length
-  private static final String CELL_INFO_FSSEQLEN = "fib_sl";
+  // Cell attribute for its current output sequence length (registered at
+  // init())
+  private CellAttribute cellSequenceLength;
 
   // Universe and simulation data
   private Universe universe;
@@ -27,8 +30,9 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
   // Reward to give out per turn
   private long rewardPerTick;
 
-  // Number of total right answers that have been given
-  private long totalRightAnswers;
+  // Number of total right answers that have been given (updated
+  // concurrently by execution threads)
+  private AtomicLong totalRightAnswers;
 
   // Number of cells that have ever answered
   private long totalScorers;
@@ -36,8 +40,8 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
   // Counter to maintain what tick a score is for
   private int counter;
 
-  // Highest score this run
-  private int highScore;
+  // Highest score this run (updated concurrently by execution threads)
+  private AtomicInteger highScore;
 
   /**
    * Constructs a new baseline reward function
@@ -46,9 +50,9 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
   {
     setMaxSequenceLength(64);
     rewardPerTick = 100000000L;
-    totalRightAnswers = 0L;
+    totalRightAnswers = new AtomicLong(0L);
     counter = 0;
-    highScore = 0;
+    highScore = new AtomicInteger(0);
   }
 
   /**
@@ -132,10 +136,10 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
   {
     if (channel == 7) {
       // Get score from cell and add score field if not present
-      int[] sl = (int[])l.getMetaInfo(CELL_INFO_FSSEQLEN);
+      int[] sl = (int[])l.getAttribute(cellSequenceLength);
       if (sl == null) {
         sl = new int[2];
-        l.setMetaInfo(CELL_INFO_FSSEQLEN,sl);
+        l.setAttribute(cellSequenceLength,sl);
       }
 
       // Zero score for each new counter tick
@@ -147,9 +151,12 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
       if ((sl[1] < fibonacci.length)&&(sl[1] >= 0)) {
         if (fibonacci[sl[1]] == value) {
           ++sl[1];
-          if (sl[1] > highScore)
-            highScore = sl[1];
-          ++totalRightAnswers;
+          for(;;) {
+            int hs = highScore.get();
+            if ((sl[1] <= hs)||highScore.compareAndSet(hs,sl[1]))
+              break;
+          }
+          totalRightAnswers.incrementAndGet();
         } else sl[1] = -1;
       }
     }
@@ -159,6 +166,7 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
   {
     this.universe = universe;
     this.simulation = simulation;
+    cellSequenceLength = CellAttribute.register("fib_sl",int[].class);
     universe.assignChannel(7,this);
   }
 
@@ -175,35 +183,38 @@ public class FibonacciSequenceRewardFunction implements RewardFunction
     throws ConditionExpirationException
   {
     ++counter;
-    totalRightAnswers = 0L;
-    highScore = 0;
+    totalRightAnswers.set(0L);
+    highScore.set(0);
   }
 
   public void postTickNotify()
     throws ConditionExpirationException
   {
-    if (totalRightAnswers > 0L) {
-      int rpc = (int)(rewardPerTick / totalRightAnswers);
+    long tra = totalRightAnswers.get();
+    int hs = highScore.get();
+    if (tra > 0L) {
+      int rpc = (int)(rewardPerTick / tra);
       if (rpc < 1)
         rpc = 1;
       int highScorers = 0;
       int scorers = 0;
 
-      for (Iterator i = universe.populationIterator();i.hasNext();) {
-        Cell c = (Cell)i.next();
-        int[] sl = (int[])c.getMetaInfo(CELL_INFO_FSSEQLEN);
+      Population pop = universe.populationStore();
+      for (int i = 0,s = pop.size();i < s;i++) {
+        Cell c = pop.cell(i);
+        int[] sl = (int[])c.getAttribute(cellSequenceLength);
         if (sl != null) {
           if ((sl[0] == counter) && (sl[1] > 0)) {
             c.incEnergy(rpc * sl[1]);
             ++scorers;
-            if (sl[1] == highScore)
+            if (sl[1] == hs)
               ++highScorers;
           }
         }
       }
       totalScorers += (long)scorers;
 
-      simulation.setStatistic("FS1 [FibonacciSequenceRewardFunction] High Score",((scorers == 0) ? 0 : highScore));
+      simulation.setStatistic("FS1 [FibonacciSequenceRewardFunction] High Score",((scorers == 0) ? 0 : hs));
       simulation.setStatistic("FS2 [FibonacciSequenceRewardFunction] Number of High Scorers",highScorers);
       simulation.setStatistic("FS3 [FibonacciSequenceRewardFunction] Number of Cells that Answered",scorers);
     } else {
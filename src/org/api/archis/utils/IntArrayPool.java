@@ -0,0 +1,86 @@
+package org.api.archis.utils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>A pool of reusable int arrays with power of two lengths</p>
+ *
+ * <p>Arrays handed out by get() are at least the length asked for, and
+ * are not cleared.  An array can be given back with recycle() from any
+ * thread when it is no longer used.  Each length keeps a limited number
+ * of arrays, and arrays beyond that are left to the garbage collector.</p>
+ *
+ * <p>This pool is thread-safe and never locks.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class IntArrayPool
+{
+  // Free arrays and their number for each power of two length
+  private ConcurrentLinkedQueue[] free;
+  private AtomicInteger[] count;
+
+  // Maximum free arrays kept of each length
+  private int maxPerLength;
+
+  /**
+   * Constructs a new empty pool
+   *
+   * @param maxPerLength Maximum number of free arrays to keep of each length
+   */
+  public IntArrayPool(int maxPerLength)
+  {
+    free = new ConcurrentLinkedQueue[31];
+    count = new AtomicInteger[31];
+    for(int i=0;i<free.length;i++) {
+      free[i] = new ConcurrentLinkedQueue();
+      count[i] = new AtomicInteger(0);
+    }
+    this.maxPerLength = maxPerLength;
+  }
+
+  /**
+   * Gets an array from the pool or allocates a new one
+   *
+   * @param minLength Minimum length (at most 2^30)
+   * @return Array whose length is the smallest power of two at least minLength (contents undefined)
+   */
+  public int[] get(int minLength)
+  {
+    int c = lengthClass(minLength);
+    int[] a = (int[])free[c].poll();
+    if (a == null)
+      return new int[1 << c];
+    count[c].decrementAndGet();
+    return a;
+  }
+
+  /**
+   * Gives an array back to the pool
+   *
+   * @param a Array returned by get() that is no longer used
+   */
+  public void recycle(int[] a)
+  {
+    int c = lengthClass(a.length);
+    if (a.length == (1 << c)) {
+      if (count[c].incrementAndGet() <= maxPerLength)
+        free[c].offer(a);
+      else count[c].decrementAndGet();
+    }
+  }
+
+  /**
+   * Internal method to get the power of two length class of a length
+   *
+   * @param length Length
+   * @return Smallest c such that (1 &lt;&lt; c) &gt;= length
+   */
+  private static int lengthClass(int length)
+  {
+    return ((length <= 1) ? 0 : (32 - Integer.numberOfLeadingZeros(length - 1)));
+  }
+}
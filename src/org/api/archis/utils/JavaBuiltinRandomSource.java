@@ -109,4 +109,20 @@ public class JavaBuiltinRandomSource implements RandomSource
       return random.nextFloat();
     }
   }
+
+  public void randomIntegers(int[] dest,int start,int length)
+  {
+    synchronized(random) {
+      for(int i=start,end=start+length;i<end;i++)
+        dest[i] = random.nextInt();
+    }
+  }
+
+  public void randomFloats(float[] dest,int start,int length)
+  {
+    synchronized(random) {
+      for(int i=start,end=start+length;i<end;i++)
+        dest[i] = random.nextFloat();
+    }
+  }
 }
@@ -114,4 +114,20 @@ public class MersenneTwisterRandomSource implements RandomSource
       return mt.nextFloat();
     }
   }
+
+  public void randomIntegers(int[] dest,int start,int length)
+  {
+    synchronized(mt) {
+      for(int i=start,end=start+length;i<end;i++)
+        dest[i] = mt.nextInt();
+    }
+  }
+
+  public void randomFloats(float[] dest,int start,int length)
+  {
+    synchronized(mt) {
+      for(int i=start,end=start+length;i<end;i++)
+        dest[i] = mt.nextFloat();
+    }
+  }
 }
@@ -86,4 +86,16 @@ public class NonRandomRandomSource implements RandomSource
   {
     return Float.intBitsToFloat((int)++s);
   }
+
+  public synchronized void randomIntegers(int[] dest,int start,int length)
+  {
+    for(int i=start,end=start+length;i<end;i++)
+      dest[i] = (int)++s;
+  }
+
+  public synchronized void randomFloats(float[] dest,int start,int length)
+  {
+    for(int i=start,end=start+length;i<end;i++)
+      dest[i] = Float.intBitsToFloat((int)++s);
+  }
 }
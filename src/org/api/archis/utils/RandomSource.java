@@ -101,4 +101,28 @@ public interface RandomSource
    * @return Random float
    */
   float randomFloat();
+
+  /**
+   * <p>Fills part of an array with random positive or negative integers</p>
+   *
+   * <p>This gives the same values as calling randomInteger() repeatedly
+   * but lets implementations avoid per-value overhead such as locking.</p>
+   *
+   * @param dest Array to fill
+   * @param start Index of first value to fill
+   * @param length Number of values to fill
+   */
+  void randomIntegers(int[] dest,int start,int length);
+
+  /**
+   * <p>Fills part of an array with random floats from 0.0 to 1.0</p>
+   *
+   * <p>This gives the same values as calling randomFloat() repeatedly
+   * but lets implementations avoid per-value overhead such as locking.</p>
+   *
+   * @param dest Array to fill
+   * @param start Index of first value to fill
+   * @param length Number of values to fill
+   */
+  void randomFloats(float[] dest,int start,int length);
 }
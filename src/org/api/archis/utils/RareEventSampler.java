@@ -0,0 +1,176 @@
+package org.api.archis.utils;
+
+/**
+ * <p>Samples rare random events by skipping ahead to the next one</p>
+ *
+ * <p>Deciding whether each of many opportunities results in an event with
+ * probability p usually means one random draw per opportunity, nearly all
+ * of which come back false when p is small.  This instead draws the number
+ * of opportunities until the next event from a geometric distribution and
+ * counts down to it, so the number of random draws is proportional to the
+ * number of events rather than the number of opportunities.  Because the
+ * geometric distribution is memoryless, the sequence of events has exactly
+ * the same distribution as one draw per opportunity.</p>
+ *
+ * <p>A sampler keeps a countdown and is not thread safe.  Code that is
+ * called from several execution threads should give each thread its own
+ * sampler (all of which may share one random source).</p>
+ *
+ * <p>When p is over one half a sampler counts down to the next opportunity
+ * <i>without</i> an event instead, so the number of random draws is
+ * proportional to the smaller of the two counts (e.g. for a catastrophe
+ * that hits most cells).</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class RareEventSampler
+{
+  private RandomSource randomSource;
+  private double probability;
+
+  // Whether the countdown is to the next non-event (p > 0.5), the
+  // probability of whichever is counted down to, and the natural log of 1
+  // minus it (or 0.0 if it is 0 or 1)
+  private boolean inverted;
+  private double counted;
+  private double logComplement;
+
+  // Opportunities left before the next counted event or non-event
+  private long countdown;
+
+  /**
+   * <p>A thread local holder giving each thread its own sampler</p>
+   *
+   * <p>This is for conditions and other code called from every execution
+   * thread.  All the samplers share one random source.</p>
+   */
+  public static class PerThread extends ThreadLocal
+  {
+    private RandomSource randomSource;
+    private double probability;
+
+    /**
+     * Constructs a new per-thread sampler holder
+     *
+     * @param randomSource Source of random numbers
+     * @param probability Initial probability of an event at each opportunity
+     */
+    public PerThread(RandomSource randomSource,double probability)
+    {
+      this.randomSource = randomSource;
+      this.probability = probability;
+    }
+
+    protected Object initialValue()
+    {
+      return new RareEventSampler(randomSource,probability);
+    }
+
+    /**
+     * Returns whether an event occurs at this opportunity for the current thread
+     *
+     * @param probability Current probability of an event
+     * @return True if an event occurs
+     */
+    public boolean event(double probability)
+    {
+      RareEventSampler s = (RareEventSampler)get();
+      s.setProbability(probability);
+      return s.event();
+    }
+  }
+
+  /**
+   * Constructs a new rare event sampler
+   *
+   * @param randomSource Source of random numbers
+   * @param probability Probability of an event at each opportunity (0.0 &lt;= p &lt;= 1.0)
+   */
+  public RareEventSampler(RandomSource randomSource,double probability)
+  {
+    this.randomSource = randomSource;
+    this.probability = -1.0;
+    setProbability(probability);
+  }
+
+  /**
+   * <p>Sets the probability of an event at each opportunity</p>
+   *
+   * <p>If the probability actually changes, the countdown to the next event
+   * is redrawn.  Setting the same probability again does nothing, so this
+   * is cheap enough to call before every event() to follow a setting that
+   * may have been changed elsewhere.</p>
+   *
+   * @param probability Probability from 0.0 to 1.0
+   */
+  public void setProbability(double probability)
+  {
+    if (probability != this.probability) {
+      this.probability = probability;
+      inverted = (probability > 0.5);
+      counted = (inverted ? (1.0 - probability) : probability);
+      logComplement = (((counted > 0.0)&&(counted < 1.0)) ? Math.log1p(-counted) : 0.0);
+      restart();
+    }
+  }
+
+  /**
+   * Gets the probability of an event at each opportunity
+   *
+   * @return Probability from 0.0 to 1.0
+   */
+  public double getProbability()
+  {
+    return probability;
+  }
+
+  /**
+   * <p>Discards the current countdown and draws a new one</p>
+   *
+   * <p>This does not change the distribution of events, but it makes the
+   * events that follow depend only on the random source's state from this
+   * point on (e.g. in deterministic mode, where each cell has its own
+   * random stream).</p>
+   */
+  public void restart()
+  {
+    countdown = gap(randomSource,counted,logComplement);
+  }
+
+  /**
+   * Returns whether an event occurs at this opportunity
+   *
+   * @return True if an event occurs
+   */
+  public boolean event()
+  {
+    if (countdown > 0L) {
+      --countdown;
+      return inverted;
+    }
+    countdown = gap(randomSource,counted,logComplement);
+    return !inverted;
+  }
+
+  /**
+   * Internal method to draw the number of non-events before the next event
+   *
+   * @param randomSource Source of random numbers
+   * @param p Probability of an event
+   * @param logComplement Natural log of 1-p
+   * @return Number of opportunities without an event (Long.MAX_VALUE if p is 0)
+   */
+  private static long gap(RandomSource randomSource,double p,double logComplement)
+  {
+    if (p >= 1.0)
+      return 0L;
+    if (!(p > 0.0))
+      return Long.MAX_VALUE;
+
+    // Inversion of the geometric distribution; 1-u is never zero so the
+    // log is always finite (a very large result saturates the cast)
+    return (long)Math.floor(Math.log(1.0 - randomSource.randomDouble()) / logComplement);
+  }
+}
@@ -0,0 +1,211 @@
+package org.api.archis.utils;
+
+/**
+ * <p>A lock-free random source that gives each thread its own generator</p>
+ *
+ * <p>Each thread that uses this source gets its own SplitMix64 stream, so
+ * worker threads never contend on a lock.  Streams are derived from the
+ * seed and the order in which threads first use the source.  A simulation
+ * run by a single thread is therefore repeatable from its seed.  With
+ * several threads, which thread draws which value depends on scheduling,
+ * just as it does with the shared locked sources.</p>
+ *
+ * <p>For fully repeatable multithreaded runs, setStream() can be used to
+ * switch the current thread to a stream derived only from the seed and a
+ * pair of keys (e.g. a cell id and the simulation clock).  The values
+ * drawn then depend only on what is being computed, not on which thread
+ * computes it.</p>
+ *
+ * <p>SplitMix64 is a fast 64-bit generator with a period of 2^64 that passes
+ * BigCrush.  It is not cryptographically secure.</p>
+ *
+ * @author Adam Ierymenko
+ * @version 1.0
+ */
+
+public class ThreadLocalRandomSource implements RandomSource
+{
+  // SplitMix64 state increment (golden ratio)
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private static char[] rclist = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+  // Seed and number of streams handed out so far
+  private long seed;
+  private long streams;
+
+  // Per-thread generator state
+  private ThreadLocalStream stream;
+
+  //
+  // Generator state for a single thread
+  //
+  private static final class Stream
+  {
+    public long state;
+
+    public Stream(long state)
+    {
+      this.state = state;
+    }
+
+    public long next()
+    {
+      return mix64(state += GOLDEN_GAMMA);
+    }
+  }
+
+  //
+  // Thread local holder for per-thread streams
+  //
+  private class ThreadLocalStream extends ThreadLocal
+  {
+    protected Object initialValue()
+    {
+      return new Stream(newStreamSeed());
+    }
+  }
+
+  /**
+   * Constructs a new ThreadLocalRandomSource
+   *
+   * @param seed Seed value
+   */
+  public ThreadLocalRandomSource(long seed)
+  {
+    this.seed = seed;
+    streams = 0L;
+    stream = new ThreadLocalStream();
+  }
+
+  /**
+   * SplitMix64 output function (a strong 64-bit mixer)
+   *
+   * @param z Value to mix
+   * @return Mixed value
+   */
+  public static long mix64(long z)
+  {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Internal method to get the starting state of the next new stream
+   *
+   * @return Stream state
+   */
+  private synchronized long newStreamSeed()
+  {
+    // Called once per thread, so this lock is not on the hot path
+    return mix64(seed + (GOLDEN_GAMMA * ++streams));
+  }
+
+  /**
+   * <p>Switches the current thread to the stream for a pair of keys</p>
+   *
+   * <p>The stream depends only on the seed and the keys, so the same keys
+   * always give the same values no matter which thread uses them.</p>
+   *
+   * @param key1 First key (e.g. cell id)
+   * @param key2 Second key (e.g. simulation clock)
+   */
+  public void setStream(long key1,long key2)
+  {
+    ((Stream)stream.get()).state = mix64(seed ^ mix64(key1 + mix64(key2 + GOLDEN_GAMMA)));
+  }
+
+  /**
+   * Internal method to get the stream for the current thread
+   *
+   * @return Current thread's stream
+   */
+  private Stream stream()
+  {
+    return (Stream)stream.get();
+  }
+
+  public int randomInteger()
+  {
+    return (int)(stream().next() >>> 32);
+  }
+
+  public int randomPositiveInteger()
+  {
+    return (int)(stream().next() >>> 33);
+  }
+
+  public long randomLong()
+  {
+    return stream().next();
+  }
+
+  public long randomPositiveLong()
+  {
+    return (stream().next() >>> 1);
+  }
+
+  public char randomChar()
+  {
+    return (char)(stream().next() >>> 48);
+  }
+
+  public char randomLetterOrNumber()
+  {
+    return rclist[randomPositiveInteger() % rclist.length];
+  }
+
+  public byte randomByte()
+  {
+    return (byte)(stream().next() >>> 56);
+  }
+
+  public short randomShort()
+  {
+    return (short)(stream().next() >>> 48);
+  }
+
+  public boolean randomBoolean()
+  {
+    return (stream().next() < 0L);
+  }
+
+  public boolean randomEvent(float probability)
+  {
+    return (randomFloat() <= probability);
+  }
+
+  public boolean randomEvent(double probability)
+  {
+    return (randomDouble() <= probability);
+  }
+
+  public double randomDouble()
+  {
+    return (double)(stream().next() >>> 11) * 0x1.0p-53;
+  }
+
+  public float randomFloat()
+  {
+    return (float)(stream().next() >>> 40) * 0x1.0p-24f;
+  }
+
+  public void randomIntegers(int[] dest,int start,int length)
+  {
+    Stream s = stream();
+    long st = s.state;
+    for(int i=start,end=start+length;i<end;i++)
+      dest[i] = (int)(mix64(st += GOLDEN_GAMMA) >>> 32);
+    s.state = st;
+  }
+
+  public void randomFloats(float[] dest,int start,int length)
+  {
+    Stream s = stream();
+    long st = s.state;
+    for(int i=start,end=start+length;i<end;i++)
+      dest[i] = (float)(mix64(st += GOLDEN_GAMMA) >>> 40) * 0x1.0p-24f;
+    s.state = st;
+  }
+}